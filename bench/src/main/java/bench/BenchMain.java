@@ -0,0 +1,34 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every benchmark in this package with the GC profiler on, which adds
+ * allocation rate and bytes allocated per operation (gc.alloc.rate.norm)
+ * next to each throughput figure. Pass a regular expression to run only
+ * matching benchmarks, and a file name to save the results as JSON so
+ * releases can be compared.
+ *
+ * Usage: BenchMain [regex] [results.json]
+ *
+ * @author Joe
+ */
+public class BenchMain {
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.include(args.length > 0 ? args[0] : "bench\\..*Benchmark");
+        builder.addProfiler(GCProfiler.class);
+        if (args.length > 1) {
+            builder.resultFormat(ResultFormatType.JSON);
+            builder.result(args[1]);
+        }
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,75 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import gamecontrol.ChessController;
+import model.IllegalMoveException;
+import model.Move;
+import model.chess.ChessBoard;
+import model.chess.MoveList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One full turn through ChessController, the way the board view drives
+ * it: beginTurn, makeMove, endTurn. A turn cannot be taken back, so every
+ * invocation gets a fresh controller on a copy of the next corpus
+ * position. The copy is made in setup and is not measured.
+ *
+ * @author Joe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerBenchmark {
+
+    @Param({"opening", "middlegame", "endgame"})
+    public String phase;
+
+    private ChessBoard[] boards;
+    // a legal move for white in each board
+    private Move[] moves;
+    private int next;
+
+    private ChessController controller;
+    private Move move;
+
+    @Setup
+    public void setup() {
+        boards = Positions.forPhase(phase);
+        moves = new Move[boards.length];
+        MoveList legal = new MoveList();
+        for (int i = 0; i < boards.length; i++) {
+            boards[i].generateMoves(boards[i].getSideToMove(), legal);
+            moves[i] = boards[i].toMove(legal.get(0));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void nextPosition() {
+        ChessBoard board = boards[next];
+        controller = new ChessController(board::copy);
+        move = moves[next];
+        next = (next + 1) % boards.length;
+    }
+
+    @Benchmark
+    public ChessController turn() throws IllegalMoveException {
+        controller.beginTurn();
+        controller.makeMove(move);
+        controller.endTurn();
+        return controller;
+    }
+}
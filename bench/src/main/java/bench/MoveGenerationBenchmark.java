@@ -0,0 +1,99 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.SideHasNoMovesException;
+import model.chess.ChessBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Board level move generation and check detection on ChessBoard. Every
+ * operation is one call on one corpus position.
+ *
+ * @author Joe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+
+    @Param({"opening", "middlegame", "endgame"})
+    public String phase;
+
+    private ChessBoard[] boards;
+
+    // every move the pieces themselves propose, legal or not, with the
+    // board it belongs to
+    private Move[] candidates;
+    private ChessBoard[] candidateBoards;
+    private int next;
+
+    @Setup
+    public void setup() {
+        boards = Positions.forPhase(phase);
+        List<Move> moves = new ArrayList<>();
+        List<ChessBoard> owners = new ArrayList<>();
+        for (ChessBoard board : boards) {
+            for (Map.Entry<Piece, Position> e
+                    : board.getAllActivePiecesPositions().entrySet()) {
+                if (e.getKey().getSide() == board.getSideToMove()) {
+                    for (Move m : e.getKey().generateMoves(e.getValue())) {
+                        moves.add(m);
+                        owners.add(board);
+                    }
+                }
+            }
+        }
+        candidates = moves.toArray(new Move[moves.size()]);
+        candidateBoards = owners.toArray(new ChessBoard[owners.size()]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Positions.SIZE)
+    public void generateAllMovesForSide(Blackhole bh)
+        throws SideHasNoMovesException {
+        for (ChessBoard board : boards) {
+            bh.consume(board.generateAllMovesForSide(board.getSideToMove()));
+        }
+    }
+
+    /**
+     * One candidate move per operation, cycling through the whole corpus.
+     */
+    @Benchmark
+    public boolean pieceCanMove() {
+        ChessBoard board = candidateBoards[next];
+        boolean result = board.pieceCanMove(candidates[next],
+                board.getSideToMove());
+        next = next + 1 == candidates.length ? 0 : next + 1;
+        return result;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Positions.SIZE)
+    public void isInCheck(Blackhole bh) {
+        for (ChessBoard board : boards) {
+            bh.consume(board.isInCheck(board.getSideToMove()));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.chess.ChessPiece;
+import model.chess.ChessUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Piece.generateMoves for one piece type, from every square a pawn can
+ * stand on so all types cover the same squares.
+ *
+ * @author Joe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PieceMovesBenchmark {
+
+    private static final int SQUARES = 48;
+
+    @Param({"PAWN", "KNIGHT", "BISHOP", "ROOK", "QUEEN", "KING"})
+    public ChessPiece.ChessPieceType type;
+
+    private Piece piece;
+    private Position[] positions;
+
+    @Setup
+    public void setup() {
+        piece = ChessUtils.getPieceOfType(type, Side.WHITE);
+        positions = new Position[SQUARES];
+        for (int i = 0; i < SQUARES; i++) {
+            // rows 1 to 6
+            positions[i] = new Position(1 + i / 8, i % 8);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SQUARES)
+    public void generateMoves(Blackhole bh) {
+        for (Position p : positions) {
+            bh.consume(piece.generateMoves(p));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.util.Random;
+import model.Side;
+import model.chess.ChessBoard;
+import model.chess.MoveList;
+
+/**
+ * The positions every benchmark runs over, grouped by game phase. Each
+ * phase holds SIZE positions reached by seeded random play from the
+ * starting position, so every run measures exactly the same boards. White
+ * is to move in all of them, like in a freshly made ChessController.
+ *
+ * @author Joe
+ */
+public class Positions {
+
+    public static final int SIZE = 16;
+
+    private static final long SEED = 1331L;
+
+    /**
+     * @param phase opening, middlegame or endgame
+     * @return SIZE independent boards for that phase
+     */
+    public static ChessBoard[] forPhase(String phase) {
+        Random random = new Random(SEED + phase.hashCode());
+        ChessBoard[] boards = new ChessBoard[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            boards[i] = play(random, phase);
+        }
+        return boards;
+    }
+
+    // keeps playing until the position fits the phase
+    private static ChessBoard play(Random random, String phase) {
+        while (true) {
+            ChessBoard board = new ChessBoard();
+            MoveList moves = new MoveList();
+            ChessBoard.MoveUndo undo = new ChessBoard.MoveUndo();
+            for (int ply = 0; ply < 400; ply++) {
+                board.generateMoves(board.getSideToMove(), moves);
+                if (moves.isEmpty()) {
+                    break;
+                }
+                if (fits(board, ply, phase)) {
+                    return board;
+                }
+                // the undo record is never used, moves stay on the board
+                board.makeMove(moves.get(random.nextInt(moves.size())), undo);
+            }
+        }
+    }
+
+    private static boolean fits(ChessBoard board, int ply, String phase) {
+        if (board.getSideToMove() != Side.WHITE) {
+            return false;
+        }
+        int pieces = board.getAllActivePiecesPositions().size();
+        switch (phase) {
+        case "opening":
+            return ply == 8;
+        case "middlegame":
+            return ply >= 30 && pieces >= 20;
+        case "endgame":
+            return pieces <= 10;
+        default:
+            throw new IllegalArgumentException("unknown phase " + phase);
+        }
+    }
+}
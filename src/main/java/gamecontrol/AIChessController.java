@@ -1,10 +1,16 @@
 package gamecontrol;
 
 import gamecontrol.ai.AIChessEngine;
-import gamecontrol.ai.RandomChessEngine;
+import gamecontrol.ai.AlphaBetaEngine;
+import gamecontrol.ai.PolyglotBook;
+import gamecontrol.ai.SearchLimits;
+import gamecontrol.ai.SearchResult;
+import java.util.Random;
 import model.IllegalMoveException;
 import model.Move;
 import model.Side;
+import model.chess.ChessBoard;
+import model.chess.PackedMove;
 
 /**
  * Controls a game between one human and one computer
@@ -15,13 +21,27 @@ public class AIChessController extends ChessController {
 
     private Side mySide;
     private AIChessEngine aiChessEngine;
+    private SearchLimits searchLimits;
+    private PolyglotBook openingBook;
+    private Random bookRandom = new Random();
+    private SearchResult lastSearch;
 
     public AIChessController() {
         this(Side.WHITE);
     }
 
     public AIChessController(Side s) {
-        this(s, new RandomChessEngine());
+        this(s, new AlphaBetaEngine());
+    }
+
+    /**
+     * Plays against an AlphaBetaEngine searching the given number of plies
+     *
+     * @param s the human player's side
+     * @param searchDepth plies the computer searches per move
+     */
+    public AIChessController(Side s, int searchDepth) {
+        this(s, new AlphaBetaEngine(searchDepth));
     }
 
     public AIChessController(Side s, AIChessEngine ai) {
@@ -29,12 +49,53 @@ public class AIChessController extends ChessController {
         aiChessEngine = ai;
     }
 
+    public SearchLimits getSearchLimits() {
+        return searchLimits;
+    }
+
+    /**
+     * Sets how long the computer may think per move, for example
+     * SearchLimits.moveTime(500).
+     *
+     * @param searchLimits the budget, null to use the engine's own default
+     */
+    public void setSearchLimits(SearchLimits searchLimits) {
+        this.searchLimits = searchLimits;
+    }
+
+    public PolyglotBook getOpeningBook() {
+        return openingBook;
+    }
+
+    /**
+     * Makes the computer play from an opening book while the game is in it,
+     * searching only once the book runs out.
+     *
+     * @param openingBook the book, null to always search
+     */
+    public void setOpeningBook(PolyglotBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * What the computer expects to happen, for showing its plan: the score
+     * and principal variation of the search behind its last move.
+     *
+     * @return the search result, or null if the last move came from the
+     * opening book or the engine does not search
+     */
+    public SearchResult getLastSearchResult() {
+        return lastSearch;
+    }
+
     @Override
     public void beginTurn() {
         super.beginTurn();
         if (getCurrentSide() != mySide && !getCurrentState().isGameOver()) {
-            Move selected = aiChessEngine.chooseNextMove(getCurrentMoves(),
-                    getBoard());
+            Move selected = bookMove();
+            if (selected == null) {
+                selected = searchMove();
+            }
             try {
                 super.makeMove(selected);
             } catch (IllegalMoveException e) {
@@ -45,9 +106,34 @@ public class AIChessController extends ChessController {
         }
     }
 
+    // a weighted random book move, or null when out of book
+    private Move bookMove() {
+        if (openingBook == null || !(getBoard() instanceof ChessBoard)) {
+            return null;
+        }
+        ChessBoard board = (ChessBoard) getBoard();
+        int move = openingBook.chooseMove(board, bookRandom);
+        if (move == PackedMove.NONE) {
+            return null;
+        }
+        lastSearch = null;
+        return board.toMove(move);
+    }
+
+    private Move searchMove() {
+        Move move = searchLimits == null
+            ? aiChessEngine.chooseNextMove(getCurrentMoves(), getBoard())
+            : aiChessEngine.chooseNextMove(getCurrentMoves(), getBoard(),
+                    searchLimits);
+        lastSearch = aiChessEngine.getLastResult();
+        return move;
+    }
+
     @Override
     public GameController getNewInstance() {
-        AIChessController res = new AIChessController();
+        AIChessController res = new AIChessController(mySide, aiChessEngine);
+        res.setSearchLimits(searchLimits);
+        res.setOpeningBook(openingBook);
         res.setCurrentState(ChessState.ONGOING);
         return res;
     }
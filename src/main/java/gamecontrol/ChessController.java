@@ -10,6 +10,7 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import model.Board;
 import model.IllegalMoveException;
 import model.Move;
 import model.Piece;
@@ -32,7 +33,8 @@ import model.chess.PromotionMove;
  */
 public class ChessController implements GameController {
 
-    private ChessBoard board;
+    private Supplier<Board> boardFactory;
+    private Board board;
     private Side currentSide;
     private Map<Piece, Set<Move>> currentMoves;
     private List<BiConsumer<Move, List<Position>>> moveCallbacks;
@@ -46,12 +48,23 @@ public class ChessController implements GameController {
 
 
     public ChessController() {
+        this(ChessBoard::new);
+    }
+
+    /**
+     * Creates a controller playing on boards from the given factory, so the
+     * board representation (ChessBoard, BitboardChessBoard...) can be picked
+     *
+     * @param boardFactory supplies a board set up in the starting position
+     */
+    public ChessController(Supplier<Board> boardFactory) {
+        this.boardFactory = boardFactory;
         moveCallbacks = new ArrayList<>();
         stateCallbacks = new ArrayList<>();
         sideCallbacks = new ArrayList<>();
         promotionCallback = null;
         setCurrentState(ChessState.ONGOING);
-        setBoard(new ChessBoard());
+        setBoard(boardFactory.get());
         setCurrentSide(Side.WHITE);
         setCurrentMoves(new HashMap<>());
     }
@@ -172,7 +185,7 @@ public class ChessController implements GameController {
                     pm.setPromotingTo(promotionCallback.get());
 
                 }
-                board.replacePieceAt(m.getDestination(),
+                getBoard().replacePieceAt(m.getDestination(),
                         ChessUtils.getPieceOfType(
                                 pm.getPromotingTo(), currentSide));
             }
@@ -270,16 +283,16 @@ public class ChessController implements GameController {
 
     @Override
     public GameController getNewInstance() {
-        ChessController res = new ChessController();
+        ChessController res = new ChessController(boardFactory);
         res.setCurrentState(ChessState.ONGOING);
         return res;
     }
 
-    protected ChessBoard getBoard() {
+    protected Board getBoard() {
         return board;
     }
 
-    private void setBoard(ChessBoard board) {
+    private void setBoard(Board board) {
         this.board = board;
     }
 
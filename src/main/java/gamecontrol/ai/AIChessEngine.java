@@ -21,4 +21,27 @@ public interface AIChessEngine {
      * @return the AI's move
      */
     Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board);
+
+    /**
+     * Choose the next move within a time and node budget. Engines that do
+     * not search ignore the limits.
+     * @param pieceMoves
+     * @param board
+     * @param limits how much the engine may spend on this move
+     * @return the AI's move
+     */
+    default Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board,
+            SearchLimits limits) {
+        return chooseNextMove(pieceMoves, board);
+    }
+
+    /**
+     * What the engine found when it last chose a move, its expected line of
+     * play included, so it can be shown without searching again.
+     * @return the result, or null for engines that do not search or before
+     * the first move
+     */
+    default SearchResult getLastResult() {
+        return null;
+    }
 }
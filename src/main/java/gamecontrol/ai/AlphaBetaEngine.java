@@ -0,0 +1,771 @@
+package gamecontrol.ai;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.Side;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.MoveList;
+import model.chess.NnueNetwork;
+import model.chess.PackedMove;
+import tablebase.Tablebase;
+import tablebase.Tablebases;
+
+/**
+ * Searches with negamax and alpha-beta pruning and scores the leaves with
+ * Evaluation.
+ *
+ * Searches deepen iteratively: depth 1, 2, 3... until the SearchLimits run
+ * out. An iteration cut short by the time or node budget is thrown away and
+ * the best move of the last finished one is played, so there is always a
+ * move ready. Without limits the engine searches its fixed depth.
+ *
+ * Each iteration after the first few starts with an aspiration window, a
+ * narrow alpha-beta window around the previous iteration's score, and
+ * widens it only when the score falls outside. Inside the tree the search is
+ * a principal variation search: the first move of a node is searched with
+ * the full window, and the rest with a zero width window that only proves
+ * them no better, searching again in full when one turns out better. A
+ * triangular table collects the principal variation as the search returns,
+ * and the SearchResult carries it.
+ *
+ * At the leaves a quiescence search plays out captures until the position is
+ * quiet, so that the evaluation never sees a piece hanging halfway through an
+ * exchange. Captures that StaticExchange says lose material are skipped
+ * there.
+ *
+ * Results are kept in a TranspositionTable, which cuts off positions already
+ * searched deeply enough. Moves are tried in the order MoveOrdering gives,
+ * starting with the table's best move.
+ *
+ * The search is selective: the Pruning techniques, each of which can be
+ * switched off, skip or shorten lines that are unlikely to matter.
+ *
+ * Given Tablebases, positions with few enough pieces are not searched at
+ * all but scored exactly from the tables: mate in so many plies, or a draw.
+ *
+ * Given an NnueNetwork, positions are evaluated by it rather than by the
+ * hand-written terms of Evaluation.
+ *
+ * Every search counts what it does in SearchStats, returned with its
+ * result, and reports each finished iteration as a SearchIterationEvent
+ * for Flight Recorder.
+ *
+ * The search runs on a copy of the game board, playing moves in place with
+ * makeMove and unmakeMove, so the board the controller holds is never
+ * touched. Only ChessBoard is supported.
+ *
+ * @author Joe
+ */
+public class AlphaBetaEngine implements AIChessEngine {
+
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_HASH_MB = 16;
+
+    /** Score of being checkmated right now, mates further away score less */
+    public static final int MATE = 100000;
+
+    static final int INFINITY = MATE + 1;
+    static final int MAX_PLY = 64;
+    // scores past this are mates, found by the search or in a tablebase
+    static final int MATE_BOUND = MATE - MAX_PLY - Tablebase.MAX_DISTANCE;
+
+    // how often the clock is read, in nodes
+    private static final int CHECK_INTERVAL = 1024;
+
+    private static final int ASPIRATION_DEPTH = 4;
+    // half the first window, doubled every time it has to widen
+    private static final int ASPIRATION_WINDOW = 50;
+
+    private static final int NULL_MOVE_DEPTH = 3;
+    private static final int NULL_MOVE_REDUCTION = 2;
+    private static final int REVERSE_FUTILITY_DEPTH = 3;
+    private static final int REVERSE_FUTILITY_MARGIN = 120;
+    // by depth left
+    private static final int[] FUTILITY_MARGIN = {0, 200, 350};
+    private static final int LATE_MOVE_DEPTH = 3;
+    // moves searched in full before any is reduced
+    private static final int LATE_MOVE_COUNT = 3;
+    // [depth left][move number], growing with the log of each
+    private static final int[][] REDUCTIONS = new int[MAX_PLY][MAX_PLY];
+
+    static {
+        for (int d = 1; d < MAX_PLY; d++) {
+            for (int m = 1; m < MAX_PLY; m++) {
+                REDUCTIONS[d][m] =
+                    (int) (0.75 + Math.log(d) * Math.log(m) / 2.25);
+            }
+        }
+    }
+
+    private int depth;
+    private TranspositionTable table;
+    private Tablebases tablebases;
+    private NnueNetwork network;
+    private final Set<Pruning> pruning = EnumSet.allOf(Pruning.class);
+
+    private long nodes;
+    private long nodeLimit;
+    private long deadline;
+    private boolean stopped;
+    private boolean stoppable;
+    private AtomicBoolean stopSignal;
+    private int firstDepth = 1;
+
+    private ChessBoard board;
+    private MoveList[] moveLists = new MoveList[MAX_PLY];
+    private ChessBoard.MoveUndo[] undos = new ChessBoard.MoveUndo[MAX_PLY];
+    // the move being searched at each ply, for countermoves
+    private int[] playedMoves = new int[MAX_PLY];
+    private MoveOrdering ordering = new MoveOrdering(MAX_PLY);
+    private PawnHashTable pawnTable =
+        new PawnHashTable(PawnHashTable.DEFAULT_SIZE_KB);
+    // the best line from each ply, pv[ply][ply] to pv[ply][pvLength[ply]]
+    private int[][] pv = new int[MAX_PLY][MAX_PLY];
+    private int[] pvLength = new int[MAX_PLY];
+    private SearchResult lastResult;
+    private SearchStats stats = new SearchStats();
+    // for StaticExchange.see
+    private final int[] exchangeGains = new int[StaticExchange.MAX_EXCHANGE];
+    // for Tablebases.probe
+    private final int[] tablebaseSquares = new int[Tablebases.MAX_PIECES];
+
+    public AlphaBetaEngine() {
+        this(DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param depth plies to search, at least 1
+     */
+    public AlphaBetaEngine(int depth) {
+        this(depth, new TranspositionTable(DEFAULT_HASH_MB));
+    }
+
+    /**
+     * @param depth plies to search, at least 1
+     * @param table the transposition table, null to search without one
+     */
+    public AlphaBetaEngine(int depth, TranspositionTable table) {
+        setDepth(depth);
+        this.table = table;
+        for (int i = 0; i < MAX_PLY; i++) {
+            moveLists[i] = new MoveList();
+            undos[i] = new ChessBoard.MoveUndo();
+        }
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        if (depth < 1 || depth >= MAX_PLY) {
+            throw new IllegalArgumentException("depth must be between 1 and "
+                    + (MAX_PLY - 1));
+        }
+        this.depth = depth;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    public void setTranspositionTable(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @param technique a selective search technique
+     * @return whether the search uses it, all do by default
+     */
+    public boolean isEnabled(Pruning technique) {
+        return pruning.contains(technique);
+    }
+
+    public void setEnabled(Pruning technique, boolean enabled) {
+        if (enabled) {
+            pruning.add(technique);
+        } else {
+            pruning.remove(technique);
+        }
+    }
+
+    public Tablebases getTablebases() {
+        return tablebases;
+    }
+
+    /**
+     * @param tablebases endgame tables to score positions from, null for
+     * none
+     */
+    public void setTablebases(Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    public NnueNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * @param network the network to evaluate positions with, null for
+     * Evaluation's own terms
+     */
+    public void setNetwork(NnueNetwork network) {
+        this.network = network;
+    }
+
+    /**
+     * @return this engine's pawn structure cache, for its hit rate
+     */
+    public PawnHashTable getPawnHashTable() {
+        return pawnTable;
+    }
+
+    @Override
+    public Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board) {
+        return chooseNextMove(pieceMoves, board, SearchLimits.depth(depth));
+    }
+
+    @Override
+    public Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board,
+            SearchLimits limits) {
+        if (pieceMoves == null) {
+            return null;
+        }
+        ChessBoard chessBoard = asChessBoard(board);
+        SearchResult result = search(chessBoard, limits);
+        lastResult = result;
+        return result.getMove() == PackedMove.NONE
+            ? null
+            : chessBoard.toMove(result.getMove());
+    }
+
+    @Override
+    public SearchResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * Searches the position for the side to move to exactly searchDepth.
+     *
+     * @param position the position, left unchanged
+     * @param searchDepth plies to search
+     * @return the best move found and its score
+     */
+    public SearchResult search(ChessBoard position, int searchDepth) {
+        return search(position, SearchLimits.depth(searchDepth));
+    }
+
+    /**
+     * Deepens the search one ply at a time until a limit is reached. Depth
+     * 1 always finishes, whatever the budget.
+     *
+     * @param position the position, left unchanged
+     * @param limits when to stop
+     * @return the result of the deepest finished iteration
+     */
+    public SearchResult search(ChessBoard position, SearchLimits limits) {
+        if (table != null) {
+            table.newSearch();
+        }
+        return iterate(position, limits);
+    }
+
+    /**
+     * Makes the search stop as soon as it sees the signal set, on top of its
+     * own limits. A search with a signal may stop before finishing depth 1,
+     * in which case its result is incomplete.
+     *
+     * @param stopSignal the signal, null for none
+     */
+    void setStopSignal(AtomicBoolean stopSignal) {
+        this.stopSignal = stopSignal;
+    }
+
+    /**
+     * @param firstDepth the depth iterative deepening starts from
+     */
+    void setFirstDepth(int firstDepth) {
+        this.firstDepth = firstDepth;
+    }
+
+    // the iterative deepening loop, without starting a new table generation
+    SearchResult iterate(ChessBoard position, SearchLimits limits) {
+        board = position.copy();
+        board.setNetwork(network);
+        nodes = 0;
+        nodeLimit = limits.getMaxNodes();
+        deadline = limits.getMoveTimeMillis() == SearchLimits.UNLIMITED
+            ? Long.MAX_VALUE
+            : System.currentTimeMillis() + limits.getMoveTimeMillis();
+        stopped = false;
+        ordering.newSearch();
+        stats = new SearchStats();
+        long start = System.nanoTime();
+
+        MoveList moves = moveLists[0];
+        board.generateMoves(board.getSideToMove(), moves);
+        if (moves.isEmpty()) {
+            SearchResult result =
+                new SearchResult(PackedMove.NONE, terminalScore(0), 0);
+            result.setStats(stats);
+            return result;
+        }
+        // sort the root moves once, later iterations move the best up
+        ordering.score(board, moves, 0, PackedMove.NONE, PackedMove.NONE);
+        for (int i = 0; i < moves.size(); i++) {
+            ordering.next(moves, 0, i);
+        }
+
+        SearchResult result = null;
+        int maxDepth = Math.min(limits.getMaxDepth(), MAX_PLY - 1);
+        for (int d = firstDepth; d <= maxDepth; d++) {
+            stoppable = d > firstDepth || stopSignal != null;
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+            SearchResult iteration = aspirate(moves, d, result);
+            stats.nodes = nodes;
+            stats.nanos = System.nanoTime() - start;
+            if (stopped) {
+                if (result == null) {
+                    result = iteration;
+                }
+                break;
+            }
+            result = iteration;
+            event.commit(stats, stats.addIteration(d, result.getScore()));
+            if (Math.abs(result.getScore()) >= MATE_BOUND) {
+                // a forced mate will not change with more depth
+                break;
+            }
+            // search the best move first next time
+            bringToFront(moves, result.getMove());
+        }
+        if (result != null) {
+            result.setStats(stats);
+        }
+        return result;
+    }
+
+    /**
+     * @return nodes searched by the last search
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return what the last search did, still counting while it runs
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    // searches the root in a window around the previous iteration's score,
+    // widening it until the score lands inside
+    private SearchResult aspirate(MoveList moves, int searchDepth,
+            SearchResult previous) {
+        if (searchDepth < ASPIRATION_DEPTH || previous == null
+                || Math.abs(previous.getScore()) >= MATE_BOUND) {
+            return searchRoot(moves, searchDepth, -INFINITY, INFINITY);
+        }
+        int delta = ASPIRATION_WINDOW;
+        int alpha = Math.max(previous.getScore() - delta, -INFINITY);
+        int beta = Math.min(previous.getScore() + delta, INFINITY);
+        while (true) {
+            SearchResult result = searchRoot(moves, searchDepth, alpha, beta);
+            if (stopped) {
+                return result;
+            }
+            delta *= 2;
+            if (result.getScore() <= alpha && alpha > -INFINITY) {
+                alpha = Math.max(alpha - delta, -INFINITY);
+            } else if (result.getScore() >= beta && beta < INFINITY) {
+                beta = Math.min(beta + delta, INFINITY);
+                bringToFront(moves, result.getMove());
+            } else {
+                return result;
+            }
+        }
+    }
+
+    private SearchResult searchRoot(MoveList moves, int searchDepth,
+            int alpha, int beta) {
+        pvLength[0] = 0;
+        int bestMove = moves.get(0);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            playedMoves[0] = move;
+            board.makeMove(move, undos[0]);
+            int score;
+            if (i == 0) {
+                score = -negamax(searchDepth - 1, -beta, -alpha, 1);
+            } else {
+                score = -negamax(searchDepth - 1, -alpha - 1, -alpha, 1);
+                if (score > alpha && score < beta && !stopped) {
+                    score = -negamax(searchDepth - 1, -beta, -alpha, 1);
+                }
+            }
+            board.unmakeMove(undos[0]);
+            if (stopped) {
+                break;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+                updatePv(0, move);
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        int[] line = pvLength[0] > 0
+            ? Arrays.copyOf(pv[0], pvLength[0])
+            : new int[] {bestMove};
+        return new SearchResult(bestMove, Math.min(alpha, beta), searchDepth,
+                line);
+    }
+
+    // the line from ply is move followed by the line from the next ply
+    private void updatePv(int ply, int move) {
+        pv[ply][ply] = move;
+        System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1,
+                pvLength[ply + 1] - ply - 1);
+        pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+    }
+
+    static ChessBoard asChessBoard(Board board) {
+        if (!(board instanceof ChessBoard)) {
+            throw new IllegalArgumentException(
+                    "the search engine needs a ChessBoard");
+        }
+        return (ChessBoard) board;
+    }
+
+    private int negamax(int remaining, int alpha, int beta, int ply) {
+        pvLength[ply] = ply;
+        // quiesce probes the tablebases itself, so leaves probe them once
+        if (remaining == 0) {
+            return quiesce(alpha, beta, ply);
+        }
+        int known = probeTablebases(ply);
+        if (known != Tablebases.NOT_FOUND) {
+            return known;
+        }
+        nodes++;
+        if ((nodes & (CHECK_INTERVAL - 1)) == 0) {
+            checkLimits();
+        }
+        if (stopped) {
+            return 0;
+        }
+        if (board.getHalfmoveClock() >= 100) {
+            return 0;
+        }
+        if (ply == MAX_PLY - 1) {
+            return Evaluation.evaluate(board, pawnTable);
+        }
+
+        long hash = board.hash();
+        int hashMove = PackedMove.NONE;
+        long entry = 0;
+        if (table != null) {
+            stats.tableProbes++;
+            entry = table.probe(hash);
+        }
+        if (entry != 0) {
+            stats.tableHits++;
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= remaining) {
+                int score = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if ((bound & TranspositionTable.LOWER) != 0 && score >= beta) {
+                    return beta;
+                }
+                if ((bound & TranspositionTable.UPPER) != 0
+                        && score <= alpha) {
+                    return alpha;
+                }
+                if (bound == TranspositionTable.EXACT) {
+                    return score;
+                }
+            }
+        }
+
+        Side side = board.getSideToMove();
+        boolean inCheck = board.isInCheck(side);
+        int staticEval = inCheck || pruning.isEmpty() ? -INFINITY
+            : Evaluation.evaluate(board, pawnTable);
+        if (!inCheck && Math.abs(beta) < MATE_BOUND) {
+            if (pruning.contains(Pruning.REVERSE_FUTILITY)
+                    && remaining <= REVERSE_FUTILITY_DEPTH
+                    && staticEval - REVERSE_FUTILITY_MARGIN * remaining
+                        >= beta) {
+                stats.reverseFutilityCutoffs++;
+                return beta;
+            }
+            if (pruning.contains(Pruning.NULL_MOVE)
+                    && remaining >= NULL_MOVE_DEPTH && staticEval >= beta
+                    && playedMoves[ply - 1] != PackedMove.NONE
+                    && hasPieces(side)) {
+                int reduction = NULL_MOVE_REDUCTION + remaining / 4;
+                playedMoves[ply] = PackedMove.NONE;
+                board.makeNullMove(undos[ply]);
+                int score = -negamax(Math.max(0, remaining - 1 - reduction),
+                        -beta, -beta + 1, ply + 1);
+                board.unmakeNullMove(undos[ply]);
+                if (stopped) {
+                    return 0;
+                }
+                if (score >= beta) {
+                    stats.nullMoveCutoffs++;
+                    return beta;
+                }
+            }
+        }
+
+        MoveList moves = moveLists[ply];
+        board.generateMoves(side, moves);
+        if (moves.isEmpty()) {
+            return terminalScore(ply);
+        }
+        int previousMove = playedMoves[ply - 1];
+        ordering.score(board, moves, ply, hashMove, previousMove);
+
+        // quiet moves cannot bring the score up to alpha
+        boolean futile = pruning.contains(Pruning.FUTILITY) && !inCheck
+            && remaining < FUTILITY_MARGIN.length
+            && Math.abs(alpha) < MATE_BOUND
+            && staticEval + FUTILITY_MARGIN[remaining] <= alpha;
+        boolean reduce = pruning.contains(Pruning.LATE_MOVE_REDUCTIONS)
+            && !inCheck && remaining >= LATE_MOVE_DEPTH;
+
+        int bestMove = PackedMove.NONE;
+        int bound = TranspositionTable.UPPER;
+        int searched = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int move = ordering.next(moves, ply, i);
+            int orderScore = ordering.scoreAt(ply, i);
+            playedMoves[ply] = move;
+            board.makeMove(move, undos[ply]);
+            boolean givesCheck = board.isInCheck(board.getSideToMove());
+            if (futile && !givesCheck && !PackedMove.isCapture(move)
+                    && !PackedMove.isPromotion(move)) {
+                board.unmakeMove(undos[ply]);
+                stats.futilityPrunes++;
+                continue;
+            }
+
+            int reduction = 0;
+            if (reduce && i >= LATE_MOVE_COUNT && !givesCheck
+                    && MoveOrdering.isHistoryScore(orderScore)) {
+                reduction = REDUCTIONS[remaining][Math.min(i, MAX_PLY - 1)];
+                if (orderScore >= MoveOrdering.HISTORY_LIMIT / 8) {
+                    // it has refuted plenty elsewhere
+                    reduction--;
+                }
+                reduction = Math.min(reduction, remaining - 2);
+                if (reduction > 0) {
+                    stats.lateMoveReductions++;
+                }
+            }
+            int score;
+            if (searched++ == 0) {
+                score = -negamax(remaining - 1, -beta, -alpha, ply + 1);
+            } else {
+                // prove the move is no better with a zero width window
+                score = -negamax(remaining - 1 - reduction, -alpha - 1,
+                        -alpha, ply + 1);
+                if (score > alpha && reduction > 0 && !stopped) {
+                    stats.lateMoveResearches++;
+                    score = -negamax(remaining - 1, -alpha - 1, -alpha,
+                            ply + 1);
+                }
+                if (score > alpha && score < beta && !stopped) {
+                    score = -negamax(remaining - 1, -beta, -alpha, ply + 1);
+                }
+            }
+            board.unmakeMove(undos[ply]);
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                stats.betaCutoffs++;
+                if (searched == 1) {
+                    stats.firstMoveCutoffs++;
+                }
+                ordering.cutoff(board, move, ply, previousMove, remaining);
+                store(hash, move, beta, remaining, TranspositionTable.LOWER,
+                        ply);
+                return beta;
+            }
+            if (score > alpha) {
+                alpha = score;
+                bestMove = move;
+                bound = TranspositionTable.EXACT;
+                updatePv(ply, move);
+            }
+        }
+        store(hash, bestMove == PackedMove.NONE ? hashMove : bestMove, alpha,
+                remaining, bound, ply);
+        return alpha;
+    }
+
+    /**
+     * Searches captures only. The side to move may also "stand pat" and
+     * take the static evaluation instead of capturing, except when in
+     * check, where every evasion is searched and mate is detected.
+     */
+    private int quiesce(int alpha, int beta, int ply) {
+        pvLength[ply] = ply;
+        nodes++;
+        stats.quiescenceNodes++;
+        if ((nodes & (CHECK_INTERVAL - 1)) == 0) {
+            checkLimits();
+        }
+        if (stopped) {
+            return 0;
+        }
+        if (ply == MAX_PLY - 1) {
+            return Evaluation.evaluate(board, pawnTable);
+        }
+        int known = probeTablebases(ply);
+        if (known != Tablebases.NOT_FOUND) {
+            return known;
+        }
+
+        Side side = board.getSideToMove();
+        boolean inCheck = board.isInCheck(side);
+        MoveList moves = moveLists[ply];
+        if (inCheck) {
+            board.generateMoves(side, moves);
+            if (moves.isEmpty()) {
+                return -MATE + ply;
+            }
+        } else {
+            int standPat = Evaluation.evaluate(board, pawnTable);
+            if (standPat >= beta) {
+                return beta;
+            }
+            if (standPat > alpha) {
+                alpha = standPat;
+            }
+            board.generateCaptures(side, moves);
+        }
+        ordering.score(board, moves, ply, PackedMove.NONE, PackedMove.NONE);
+
+        for (int i = 0; i < moves.size(); i++) {
+            int move = ordering.next(moves, ply, i);
+            if (!inCheck && (isUnderpromotion(move)
+                    || StaticExchange.see(board, move, exchangeGains) < 0)) {
+                continue;
+            }
+            playedMoves[ply] = move;
+            board.makeMove(move, undos[ply]);
+            int score = -quiesce(-beta, -alpha, ply + 1);
+            board.unmakeMove(undos[ply]);
+            if (stopped) {
+                return 0;
+            }
+            if (score >= beta) {
+                return beta;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+        }
+        return alpha;
+    }
+
+    // the exact score from the tablebases, or NOT_FOUND
+    private int probeTablebases(int ply) {
+        if (tablebases == null || Long.bitCount(board.getOccupied())
+                > tablebases.getMaxPieces()) {
+            return Tablebases.NOT_FOUND;
+        }
+        int value = tablebases.probe(board, tablebaseSquares);
+        if (value == Tablebases.NOT_FOUND || value == Tablebase.DRAW) {
+            return value;
+        }
+        int mate = ply + Tablebase.distance(value);
+        return value > 0 ? MATE - mate : -MATE + mate;
+    }
+
+    // whether a side has anything besides king and pawns
+    private boolean hasPieces(Side side) {
+        return (board.getBitboard(side, ChessPiece.ChessPieceType.KNIGHT)
+            | board.getBitboard(side, ChessPiece.ChessPieceType.BISHOP)
+            | board.getBitboard(side, ChessPiece.ChessPieceType.ROOK)
+            | board.getBitboard(side, ChessPiece.ChessPieceType.QUEEN))
+            != 0;
+    }
+
+    private static boolean isUnderpromotion(int move) {
+        return PackedMove.isPromotion(move)
+            && PackedMove.promotion(move) != ChessPiece.ChessPieceType.QUEEN;
+    }
+
+    private void store(long hash, int move, int score, int remaining,
+            int bound, int ply) {
+        if (table != null) {
+            table.store(hash, move, toTable(score, ply), remaining, bound);
+        }
+    }
+
+    // mate scores are stored as distance from this position, not the root
+    private static int toTable(int score, int ply) {
+        if (score >= MATE_BOUND) {
+            return score + ply;
+        }
+        if (score <= -MATE_BOUND) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE_BOUND) {
+            return score - ply;
+        }
+        if (score <= -MATE_BOUND) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    // depth 1 runs to the end so that there is always a move to play
+    private void checkLimits() {
+        if (!stoppable) {
+            return;
+        }
+        if ((nodeLimit != SearchLimits.UNLIMITED && nodes >= nodeLimit)
+                || System.currentTimeMillis() >= deadline
+                || (stopSignal != null && stopSignal.get())) {
+            stopped = true;
+        }
+    }
+
+    private static void bringToFront(MoveList moves, int move) {
+        for (int i = 0; i < moves.size(); i++) {
+            if (moves.get(i) == move) {
+                for (int j = i; j > 0; j--) {
+                    moves.set(j, moves.get(j - 1));
+                }
+                moves.set(0, move);
+                return;
+            }
+        }
+    }
+
+    // checkmate or stalemate for the side to move, which has no moves
+    private int terminalScore(int ply) {
+        return board.isInCheck(board.getSideToMove()) ? -MATE + ply : 0;
+    }
+
+}
@@ -0,0 +1,61 @@
+package gamecontrol.ai;
+
+import model.Side;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.PieceSquareTables;
+
+/**
+ * Static evaluation: material plus piece-square tables plus PawnStructure,
+ * in centipawns from the point of view of the side to move.
+ *
+ * The board keeps middlegame and endgame sums of PieceSquareTables up to
+ * date as pieces move, so evaluating is a blend of the two by game phase:
+ * all middlegame with every piece on the board, all endgame once only
+ * kings and pawns are left.
+ *
+ * A board with an NnueNetwork set is scored by the network instead.
+ *
+ * @author Joe
+ */
+public class Evaluation {
+
+    /**
+     * @param type a piece type
+     * @return its material value in centipawns, 0 for the king
+     */
+    public static int pieceValue(ChessPiece.ChessPieceType type) {
+        return PieceSquareTables.pieceValue(type);
+    }
+
+    /**
+     * @param board the position
+     * @return the score for the side to move, positive if it is better off
+     */
+    public static int evaluate(ChessBoard board) {
+        return evaluate(board, null);
+    }
+
+    /**
+     * @param board the position
+     * @param pawns a cache for the pawn structure score, null for none
+     * @return the score for the side to move, positive if it is better off
+     */
+    public static int evaluate(ChessBoard board, PawnHashTable pawns) {
+        if (board.getNetwork() != null) {
+            return board.getNetworkScore();
+        }
+        int pawnScore = pawns == null
+            ? PawnStructure.evaluate(board)
+            : pawns.evaluate(board);
+        int middlegame = board.getMiddlegameScore()
+            + PawnStructure.middlegame(pawnScore);
+        int endgame = board.getEndgameScore()
+            + PawnStructure.endgame(pawnScore);
+        int phase = Math.min(board.getPhase(), PieceSquareTables.MAX_PHASE);
+        int score = (middlegame * phase
+            + endgame * (PieceSquareTables.MAX_PHASE - phase))
+            / PieceSquareTables.MAX_PHASE;
+        return board.getSideToMove() == Side.WHITE ? score : -score;
+    }
+}
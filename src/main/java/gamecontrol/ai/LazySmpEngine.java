@@ -0,0 +1,226 @@
+package gamecontrol.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.chess.ChessBoard;
+import model.chess.NnueNetwork;
+import model.chess.PackedMove;
+import tablebase.Tablebases;
+
+/**
+ * Searches on several threads at once with "lazy SMP": every thread runs
+ * its own AlphaBetaEngine on its own copy of the board, and they only talk
+ * through one shared TranspositionTable. Helpers fill the table with
+ * results the main search then finds instead of computing, and every other
+ * helper starts one ply deeper so they do not all walk the tree in step.
+ *
+ * The main search runs on the calling thread under the given limits and
+ * its result is the answer. The helpers search without limits and are
+ * stopped as soon as it finishes.
+ *
+ * @author Joe
+ */
+public class LazySmpEngine implements AIChessEngine {
+
+    private final AlphaBetaEngine main;
+    private final AlphaBetaEngine[] helpers;
+    private final TranspositionTable table;
+    private final AtomicBoolean stopSignal = new AtomicBoolean();
+    private final ExecutorService pool;
+    private SearchResult lastResult;
+
+    /**
+     * @param threads threads to search on, counting the calling one
+     */
+    public LazySmpEngine(int threads) {
+        this(threads, AlphaBetaEngine.DEFAULT_DEPTH,
+                new TranspositionTable(AlphaBetaEngine.DEFAULT_HASH_MB));
+    }
+
+    /**
+     * @param threads threads to search on, counting the calling one
+     * @param depth plies to search when no limits are given
+     * @param table the table all threads share
+     */
+    public LazySmpEngine(int threads, int depth, TranspositionTable table) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        if (table == null) {
+            throw new IllegalArgumentException(
+                    "lazy SMP needs a transposition table");
+        }
+        this.table = table;
+        main = new AlphaBetaEngine(depth, table);
+        helpers = new AlphaBetaEngine[threads - 1];
+        for (int i = 0; i < helpers.length; i++) {
+            helpers[i] = new AlphaBetaEngine(depth, table);
+            helpers[i].setStopSignal(stopSignal);
+            helpers[i].setFirstDepth(1 + (i + 1) % 2);
+        }
+        pool = helpers.length == 0 ? null
+            : Executors.newFixedThreadPool(helpers.length, r -> {
+                Thread t = new Thread(r, "lazy-smp-helper");
+                t.setDaemon(true);
+                return t;
+            });
+    }
+
+    public int getThreads() {
+        return helpers.length + 1;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    public boolean isEnabled(Pruning technique) {
+        return main.isEnabled(technique);
+    }
+
+    /**
+     * @param technique a selective search technique
+     * @param enabled whether every thread should use it
+     */
+    public void setEnabled(Pruning technique, boolean enabled) {
+        main.setEnabled(technique, enabled);
+        for (AlphaBetaEngine helper : helpers) {
+            helper.setEnabled(technique, enabled);
+        }
+    }
+
+    public Tablebases getTablebases() {
+        return main.getTablebases();
+    }
+
+    /**
+     * @param tablebases endgame tables every thread scores positions from,
+     * null for none
+     */
+    public void setTablebases(Tablebases tablebases) {
+        main.setTablebases(tablebases);
+        for (AlphaBetaEngine helper : helpers) {
+            helper.setTablebases(tablebases);
+        }
+    }
+
+    public NnueNetwork getNetwork() {
+        return main.getNetwork();
+    }
+
+    /**
+     * @param network the network every thread evaluates positions with,
+     * null for Evaluation's own terms
+     */
+    public void setNetwork(NnueNetwork network) {
+        main.setNetwork(network);
+        for (AlphaBetaEngine helper : helpers) {
+            helper.setNetwork(network);
+        }
+    }
+
+    @Override
+    public Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board) {
+        return chooseNextMove(pieceMoves, board,
+                SearchLimits.depth(main.getDepth()));
+    }
+
+    @Override
+    public Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board,
+            SearchLimits limits) {
+        if (pieceMoves == null) {
+            return null;
+        }
+        ChessBoard chessBoard = AlphaBetaEngine.asChessBoard(board);
+        SearchResult result = search(chessBoard, limits);
+        lastResult = result;
+        return result.getMove() == PackedMove.NONE
+            ? null
+            : chessBoard.toMove(result.getMove());
+    }
+
+    @Override
+    public SearchResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * Searches the position on all threads.
+     *
+     * @param position the position, left unchanged
+     * @param limits when the main search stops, the helpers follow it
+     * @return the main search's result, with the stats of all threads
+     */
+    public SearchResult search(ChessBoard position, SearchLimits limits) {
+        table.newSearch();
+        stopSignal.set(false);
+        SearchLimits unlimited = new SearchLimits(Integer.MAX_VALUE,
+                SearchLimits.UNLIMITED, SearchLimits.UNLIMITED);
+        List<Future<SearchResult>> running = new ArrayList<>();
+        for (AlphaBetaEngine helper : helpers) {
+            running.add(pool.submit(() -> helper.iterate(position, unlimited)));
+        }
+        SearchResult result;
+        try {
+            result = main.iterate(position, limits);
+        } finally {
+            stopSignal.set(true);
+            // wait so that no helper is still searching when the next
+            // search starts
+            for (Future<SearchResult> f : running) {
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("helper search failed",
+                            e.getCause());
+                }
+            }
+        }
+        result.setStats(getStats());
+        return result;
+    }
+
+    /**
+     * @return nodes searched by all threads in the last search
+     */
+    public long getNodes() {
+        long nodes = main.getNodes();
+        for (AlphaBetaEngine helper : helpers) {
+            nodes += helper.getNodes();
+        }
+        return nodes;
+    }
+
+    /**
+     * @return what all threads did in the last search, with the main
+     * thread's time and iterations
+     */
+    public SearchStats getStats() {
+        SearchStats stats = main.getStats().copy();
+        for (AlphaBetaEngine helper : helpers) {
+            stats.add(helper.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Stops the helper threads. The engine cannot search afterwards.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package gamecontrol.ai;
+
+import java.util.Arrays;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+/**
+ * Decides the order the search tries moves in, since alpha-beta prunes the
+ * most when the best move comes first. In order:
+ *
+ * 1. the transposition table's best move
+ * 2. captures and queen promotions, most valuable victim first and then
+ *    least valuable attacker (MVV-LVA), except those StaticExchange says
+ *    lose material
+ * 3. the two killer moves of the ply, quiet moves that caused a cutoff in
+ *    a sibling node
+ * 4. the countermove, the quiet move that last refuted the opponent's
+ *    previous move
+ * 5. other quiet moves by history, how often a move from one square to
+ *    another has caused cutoffs anywhere in the tree
+ * 6. losing captures, least bad first
+ *
+ * Every table is a primitive array. One instance belongs to one search
+ * thread.
+ *
+ * @author Joe
+ */
+public class MoveOrdering {
+
+    private static final int HASH_MOVE = 1 << 30;
+    private static final int CAPTURE = 1 << 29;
+    private static final int FIRST_KILLER = 1 << 28;
+    private static final int SECOND_KILLER = FIRST_KILLER - 1;
+    private static final int COUNTERMOVE = FIRST_KILLER - 2;
+    // history scores are halved when one reaches this, so they stay below
+    // the countermove
+    static final int HISTORY_LIMIT = 1 << 20;
+    // below every quiet move
+    private static final int LOSING_CAPTURE = -(1 << 21);
+
+    // indexed by ChessPieceType ordinal: PAWN, ROOK, KNIGHT, BISHOP, QUEEN,
+    // KING, ranking pieces for MVV-LVA
+    private static final int[] RANK = {1, 4, 2, 2, 5, 6};
+
+    private final int[][] killers;
+    private final int[][] scores;
+    // [side][from * 64 + to]
+    private final int[][] history = new int[2][64 * 64];
+    // [from * 64 + to] of the previous move
+    private final int[] countermoves = new int[64 * 64];
+    // for StaticExchange.see
+    private final int[] exchangeGains = new int[StaticExchange.MAX_EXCHANGE];
+
+    /**
+     * @param maxPly the deepest ply the search reaches
+     */
+    public MoveOrdering(int maxPly) {
+        killers = new int[maxPly][2];
+        scores = new int[maxPly][];
+    }
+
+    /**
+     * Forgets the killers and countermoves and weakens the history for a
+     * new search.
+     */
+    public void newSearch() {
+        for (int[] k : killers) {
+            Arrays.fill(k, PackedMove.NONE);
+        }
+        Arrays.fill(countermoves, PackedMove.NONE);
+        for (int[] h : history) {
+            for (int i = 0; i < h.length; i++) {
+                h[i] >>= 2;
+            }
+        }
+    }
+
+    /**
+     * Scores the moves of a node, to be taken in order with next.
+     *
+     * @param board the position the moves are for
+     * @param moves the legal moves
+     * @param ply the node's distance from the root
+     * @param hashMove the table's best move, or PackedMove.NONE
+     * @param previousMove the move that led here, or PackedMove.NONE
+     */
+    public void score(ChessBoard board, MoveList moves, int ply, int hashMove,
+            int previousMove) {
+        int[] s = scores[ply];
+        if (s == null || s.length < moves.size()) {
+            s = scores[ply] = new int[Math.max(256, moves.size())];
+        }
+        int[] sideHistory = history[board.getSideToMove().ordinal()];
+        int counter = previousMove == PackedMove.NONE ? PackedMove.NONE
+            : countermoves[butterfly(previousMove)];
+        for (int i = 0; i < moves.size(); i++) {
+            int m = moves.get(i);
+            if (m == hashMove) {
+                s[i] = HASH_MOVE;
+            } else if (!isQuiet(m)) {
+                int see = mayLoseMaterial(board, m)
+                    ? StaticExchange.see(board, m, exchangeGains) : 0;
+                s[i] = see < 0 ? LOSING_CAPTURE + see
+                    : CAPTURE + mvvLva(board, m);
+            } else if (m == killers[ply][0]) {
+                s[i] = FIRST_KILLER;
+            } else if (m == killers[ply][1]) {
+                s[i] = SECOND_KILLER;
+            } else if (m == counter) {
+                s[i] = COUNTERMOVE;
+            } else {
+                s[i] = sideHistory[butterfly(m)];
+            }
+        }
+    }
+
+    /**
+     * Moves the best scored of the moves from index on to index and returns
+     * it. Picking one at a time saves sorting moves that a cutoff makes
+     * unnecessary.
+     *
+     * @param moves moves scored with score
+     * @param ply the ply they were scored for
+     * @param index how many moves have been taken already
+     * @return the next move to try
+     */
+    public int next(MoveList moves, int ply, int index) {
+        int[] s = scores[ply];
+        int best = index;
+        for (int i = index + 1; i < moves.size(); i++) {
+            if (s[i] > s[best]) {
+                best = i;
+            }
+        }
+        int move = moves.get(best);
+        moves.set(best, moves.get(index));
+        moves.set(index, move);
+        int score = s[best];
+        s[best] = s[index];
+        s[index] = score;
+        return move;
+    }
+
+    /**
+     * @param ply the ply the moves were scored for
+     * @param index a move already taken with next
+     * @return the score it was ordered by
+     */
+    public int scoreAt(int ply, int index) {
+        return scores[ply][index];
+    }
+
+    /**
+     * @param score a score from scoreAt
+     * @return whether it belongs to a quiet move ordered by history alone,
+     * not the hash move, a capture, a killer or the countermove
+     */
+    public static boolean isHistoryScore(int score) {
+        return score >= 0 && score < COUNTERMOVE;
+    }
+
+    /**
+     * Records a move that failed high, so that it is tried earlier next
+     * time. Only quiet moves are recorded; captures are ordered well
+     * without help.
+     *
+     * @param board the position the move was played in
+     * @param move the move
+     * @param ply the node's distance from the root
+     * @param previousMove the move that led to the node, or PackedMove.NONE
+     * @param remaining the depth the node was searched to
+     */
+    public void cutoff(ChessBoard board, int move, int ply, int previousMove,
+            int remaining) {
+        if (!isQuiet(move)) {
+            return;
+        }
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        if (previousMove != PackedMove.NONE) {
+            countermoves[butterfly(previousMove)] = move;
+        }
+        int[] sideHistory = history[board.getSideToMove().ordinal()];
+        int i = butterfly(move);
+        sideHistory[i] += remaining * remaining;
+        if (sideHistory[i] >= HISTORY_LIMIT) {
+            for (int j = 0; j < sideHistory.length; j++) {
+                sideHistory[j] >>= 1;
+            }
+        }
+    }
+
+    // queen promotions are ordered with the captures
+    private static boolean isQuiet(int move) {
+        return !PackedMove.isCapture(move) && !(PackedMove.isPromotion(move)
+            && PackedMove.promotion(move)
+                == ChessPiece.ChessPieceType.QUEEN);
+    }
+
+    private static int mvvLva(ChessBoard board, int move) {
+        int victim = PackedMove.isEnPassant(move) ? RANK[0]
+            : PackedMove.isCapture(move)
+                ? RANK[typeAt(board, PackedMove.to(move))]
+                : 0;
+        if (PackedMove.isPromotion(move)) {
+            victim += RANK[PackedMove.promotion(move).ordinal()];
+        }
+        return victim * 8 - RANK[typeAt(board, PackedMove.from(move))];
+    }
+
+    // a capture of something worth at least the capturer never loses
+    // material, so it needs no exchange evaluation
+    private static boolean mayLoseMaterial(ChessBoard board, int move) {
+        if (!PackedMove.isCapture(move)) {
+            // a promotion onto a guarded square
+            return true;
+        }
+        if (PackedMove.isEnPassant(move)) {
+            return false;
+        }
+        return RANK[typeAt(board, PackedMove.to(move))]
+            < RANK[typeAt(board, PackedMove.from(move))];
+    }
+
+    private static int typeAt(ChessBoard board, int square) {
+        return ((ChessPiece.ChessPieceType) board.getPieceAt(square)
+            .getType()).ordinal();
+    }
+
+    private static int butterfly(int move) {
+        return PackedMove.from(move) * 64 + PackedMove.to(move);
+    }
+}
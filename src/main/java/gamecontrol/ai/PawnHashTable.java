@@ -0,0 +1,83 @@
+package gamecontrol.ai;
+
+import java.util.Arrays;
+import model.chess.ChessBoard;
+
+/**
+ * Caches PawnStructure scores by the board's pawn hash. Pawns move rarely
+ * compared to other pieces, so most positions a search visits share their
+ * pawn structure with one evaluated before, and nearly every lookup hits.
+ *
+ * Entries are a key and score pair in one long[], checked by XOR like the
+ * TranspositionTable, and a newer entry always replaces an older one. The
+ * table is meant for one search thread, which keeps the counters plain.
+ *
+ * @author Joe
+ */
+public class PawnHashTable {
+
+    public static final int DEFAULT_SIZE_KB = 1024;
+
+    // set in every stored entry so an empty slot never matches
+    private static final long STORED = 1L << 32;
+
+    private final long[] table;
+    private final int slotMask;
+
+    private long probes;
+    private long hits;
+
+    /**
+     * @param kilobytes table size, rounded down to a power of two number of
+     * entries
+     */
+    public PawnHashTable(int kilobytes) {
+        long slots = Long.highestOneBit(Math.max(1, kilobytes * 1024L / 16));
+        if (slots > 1 << 26) {
+            throw new IllegalArgumentException("pawn hash table too large");
+        }
+        table = new long[(int) slots * 2];
+        slotMask = (int) slots - 1;
+    }
+
+    /**
+     * @param board the position
+     * @return its PawnStructure score, from the table if it is there
+     */
+    public int evaluate(ChessBoard board) {
+        probes++;
+        long key = board.getPawnHash();
+        int i = ((int) (key ^ (key >>> 32)) & slotMask) << 1;
+        long data = table[i + 1];
+        if (data != 0 && (table[i] ^ data) == key) {
+            hits++;
+            return (int) data;
+        }
+        int score = PawnStructure.evaluate(board);
+        data = STORED | (score & 0xFFFFFFFFL);
+        table[i] = key ^ data;
+        table[i + 1] = data;
+        return score;
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the fraction of lookups that found a score, 0 before any
+     */
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        probes = 0;
+        hits = 0;
+    }
+}
@@ -0,0 +1,133 @@
+package gamecontrol.ai;
+
+import model.Side;
+import model.chess.AttackTables;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+
+/**
+ * Pawn structure terms of the evaluation: penalties for doubled, isolated
+ * and backward pawns and a bonus for passed pawns that grows as they
+ * advance. They depend on nothing but the pawns, which is what lets
+ * PawnHashTable cache them.
+ *
+ * Scores come as one int holding a middlegame and an endgame value, see
+ * pack, from white's point of view.
+ *
+ * @author Joe
+ */
+public class PawnStructure {
+
+    private static final int DOUBLED_MIDDLEGAME = -10;
+    private static final int DOUBLED_ENDGAME = -20;
+    private static final int ISOLATED_MIDDLEGAME = -10;
+    private static final int ISOLATED_ENDGAME = -15;
+    private static final int BACKWARD_MIDDLEGAME = -8;
+    private static final int BACKWARD_ENDGAME = -10;
+    // by how many rows the pawn has advanced from its starting row
+    private static final int[] PASSED_MIDDLEGAME = {0, 5, 10, 25, 50, 90};
+    private static final int[] PASSED_ENDGAME = {10, 15, 25, 45, 75, 120};
+
+    private static final long FILE_A = 0x0101010101010101L;
+
+    private static final long[] FILES = new long[8];
+    private static final long[] ADJACENT_FILES = new long[8];
+
+    static {
+        for (int col = 0; col < 8; col++) {
+            FILES[col] = FILE_A << col;
+        }
+        for (int col = 0; col < 8; col++) {
+            ADJACENT_FILES[col] = (col > 0 ? FILES[col - 1] : 0)
+                | (col < 7 ? FILES[col + 1] : 0);
+        }
+    }
+
+    /**
+     * @return middlegame and endgame values in one int
+     */
+    public static int pack(int middlegame, int endgame) {
+        return (endgame << 16) + middlegame;
+    }
+
+    public static int middlegame(int packed) {
+        return (short) packed;
+    }
+
+    public static int endgame(int packed) {
+        return (packed - (short) packed) >> 16;
+    }
+
+    /**
+     * @param board the position
+     * @return the pawn structure score, packed, from white's point of view
+     */
+    public static int evaluate(ChessBoard board) {
+        long white = board.getBitboard(Side.WHITE,
+                ChessPiece.ChessPieceType.PAWN);
+        long black = board.getBitboard(Side.BLACK,
+                ChessPiece.ChessPieceType.PAWN);
+        int w = evaluateSide(Side.WHITE, white, black);
+        int b = evaluateSide(Side.BLACK, black, white);
+        return pack(middlegame(w) - middlegame(b), endgame(w) - endgame(b));
+    }
+
+    private static int evaluateSide(Side side, long own, long enemy) {
+        int middlegame = 0;
+        int endgame = 0;
+        for (int col = 0; col < 8; col++) {
+            int onFile = Long.bitCount(own & FILES[col]);
+            if (onFile > 1) {
+                middlegame += DOUBLED_MIDDLEGAME * (onFile - 1);
+                endgame += DOUBLED_ENDGAME * (onFile - 1);
+            }
+        }
+
+        long pawns = own;
+        while (pawns != Bitboards.EMPTY) {
+            int sq = Bitboards.lowestSquare(pawns);
+            pawns &= pawns - 1;
+            int row = Bitboards.row(sq);
+            int col = Bitboards.col(sq);
+
+            if ((enemy & (FILES[col] | ADJACENT_FILES[col])
+                    & rowsAhead(side, row)) == Bitboards.EMPTY) {
+                int advanced = side == Side.WHITE ? 6 - row : row - 1;
+                middlegame += PASSED_MIDDLEGAME[advanced];
+                endgame += PASSED_ENDGAME[advanced];
+            }
+
+            if ((own & ADJACENT_FILES[col]) == Bitboards.EMPTY) {
+                middlegame += ISOLATED_MIDDLEGAME;
+                endgame += ISOLATED_ENDGAME;
+            } else if (isBackward(side, sq, own, enemy)) {
+                middlegame += BACKWARD_MIDDLEGAME;
+                endgame += BACKWARD_ENDGAME;
+            }
+        }
+        return pack(middlegame, endgame);
+    }
+
+    // no pawn beside or behind it on a neighbouring file can support its
+    // advance, and an enemy pawn guards the square in front of it
+    private static boolean isBackward(Side side, int sq, long own,
+            long enemy) {
+        int row = Bitboards.row(sq);
+        long supporters = own & ADJACENT_FILES[Bitboards.col(sq)]
+            & ~rowsAhead(side, row);
+        if (supporters != Bitboards.EMPTY) {
+            return false;
+        }
+        int stop = side == Side.WHITE ? sq - 8 : sq + 8;
+        return (AttackTables.pawnAttacks(side, stop) & enemy)
+            != Bitboards.EMPTY;
+    }
+
+    // rows nearer the promotion row than row, for pawns of side
+    private static long rowsAhead(Side side, int row) {
+        return side == Side.WHITE
+            ? (1L << (row * 8)) - 1
+            : -(1L << ((row + 1) * 8));
+    }
+}
@@ -0,0 +1,237 @@
+package gamecontrol.ai;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.King;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+/**
+ * An opening book in Polyglot's .bin format, memory-mapped so that opening
+ * one costs nothing however big it is and lookups only touch the pages they
+ * need.
+ *
+ * The file is a sorted array of 16 byte big-endian entries: the position's
+ * PolyglotKeys key, a move, a weight and four bytes of learning data that
+ * are ignored. A position's entries sit next to each other, so a binary
+ * search on the key finds them all.
+ *
+ * A move packs the destination file and rank in bits 0 to 5, the origin in
+ * bits 6 to 11 and a promotion in bits 12 to 14 (1 knight, 2 bishop, 3 rook,
+ * 4 queen). Ranks count from white's side. Castling is written as the king
+ * taking its own rook, e1h1 for white kingside.
+ *
+ * @author Joe
+ */
+public class PolyglotBook implements Closeable {
+
+    private static final int ENTRY_SIZE = 16;
+
+    // by Polyglot promotion number
+    private static final ChessPiece.ChessPieceType[] PROMOTIONS = {null,
+        ChessPiece.ChessPieceType.KNIGHT, ChessPiece.ChessPieceType.BISHOP,
+        ChessPiece.ChessPieceType.ROOK, ChessPiece.ChessPieceType.QUEEN};
+
+    private final FileChannel channel;
+    private final MappedByteBuffer entries;
+    private final int size;
+    private final PolyglotKeys keys;
+    private final MoveList legalMoves = new MoveList();
+
+    /**
+     * A move from the book and how often it should be played compared to
+     * the other moves for the position.
+     */
+    public static class BookMove {
+        private final int move;
+        private final int weight;
+
+        public BookMove(int move, int weight) {
+            this.move = move;
+            this.weight = weight;
+        }
+
+        /**
+         * @return the move as a PackedMove int
+         */
+        public int getMove() {
+            return move;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return PackedMove.toString(move) + " (" + weight + ")";
+        }
+    }
+
+    private PolyglotBook(FileChannel channel, PolyglotKeys keys)
+            throws IOException {
+        this.channel = channel;
+        this.keys = keys;
+        long length = channel.size();
+        if (length % ENTRY_SIZE != 0) {
+            throw new IOException("not a Polyglot book, the size is not a "
+                    + "multiple of " + ENTRY_SIZE + " bytes");
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("books over 2 GB are not supported");
+        }
+        entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        size = (int) (length / ENTRY_SIZE);
+    }
+
+    /**
+     * Opens and maps a book.
+     *
+     * @param file the .bin file
+     * @param keys the Polyglot random numbers the book was built with
+     * @return the book, to be closed when done with
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public static PolyglotBook open(Path file, PolyglotKeys keys)
+            throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ);
+        try {
+            return new PolyglotBook(channel, keys);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of entries in the book
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks the position up. Entries whose move is not legal here, which
+     * only a key collision or a broken book can cause, are left out.
+     *
+     * @param board the position
+     * @return the book moves for it with their weights, heaviest first,
+     * empty if the position is not in the book
+     */
+    public synchronized List<BookMove> getMoves(ChessBoard board) {
+        long key = keys.key(board);
+        int first = firstEntry(key);
+        if (first < 0) {
+            return Collections.emptyList();
+        }
+
+        board.generateMoves(board.getSideToMove(), legalMoves);
+        List<BookMove> moves = new ArrayList<>();
+        for (int i = first; i < size && entryKey(i) == key; i++) {
+            int offset = i * ENTRY_SIZE;
+            int move = toLegalMove(board,
+                    entries.getShort(offset + 8) & 0xFFFF);
+            int weight = entries.getShort(offset + 10) & 0xFFFF;
+            if (move != PackedMove.NONE) {
+                moves.add(new BookMove(move, weight));
+            }
+        }
+        moves.sort((a, b) -> b.getWeight() - a.getWeight());
+        return moves;
+    }
+
+    /**
+     * Picks one of the position's book moves at random, each with a chance
+     * proportional to its weight.
+     *
+     * @param board the position
+     * @param random the source of randomness
+     * @return a PackedMove int, or PackedMove.NONE if the position is not in
+     * the book
+     */
+    public int chooseMove(ChessBoard board, Random random) {
+        List<BookMove> moves = getMoves(board);
+        long total = 0;
+        for (BookMove m : moves) {
+            total += m.getWeight();
+        }
+        if (total == 0) {
+            // missing or all zero weights, every move is equally good
+            return moves.isEmpty() ? PackedMove.NONE
+                : moves.get(random.nextInt(moves.size())).getMove();
+        }
+        long pick = (long) (random.nextDouble() * total);
+        for (BookMove m : moves) {
+            pick -= m.getWeight();
+            if (pick < 0) {
+                return m.getMove();
+            }
+        }
+        return moves.get(moves.size() - 1).getMove();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping itself goes away once the buffer is collected
+        channel.close();
+    }
+
+    private long entryKey(int i) {
+        return entries.getLong(i * ENTRY_SIZE);
+    }
+
+    // index of the first entry with the key, or -1
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(entryKey(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < size && entryKey(low) == key ? low : -1;
+    }
+
+    // the legal move matching a Polyglot move, or PackedMove.NONE
+    private int toLegalMove(ChessBoard board, int bookMove) {
+        int from = (bookMove >>> 6 & 0x3F) ^ 56;
+        int to = (bookMove & 0x3F) ^ 56;
+        int promotion = bookMove >>> 12 & 0x7;
+        if (promotion >= PROMOTIONS.length) {
+            return PackedMove.NONE;
+        }
+
+        if (board.getPieceAt(from) instanceof King
+                && Bitboards.row(from) == Bitboards.row(to)
+                && Math.abs(Bitboards.col(from) - Bitboards.col(to)) > 1) {
+            // king takes rook is castling, the king lands two squares over
+            to = from + (to > from ? 2 : -2);
+        }
+
+        for (int i = 0; i < legalMoves.size(); i++) {
+            int m = legalMoves.get(i);
+            if (PackedMove.from(m) == from && PackedMove.to(m) == to
+                    && (PackedMove.isPromotion(m)
+                        ? PackedMove.promotion(m) == PROMOTIONS[promotion]
+                        : promotion == 0)) {
+                return m;
+            }
+        }
+        return PackedMove.NONE;
+    }
+}
@@ -0,0 +1,177 @@
+package gamecontrol.ai;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+
+/**
+ * Position keys the way Polyglot opening books are indexed. They are Zobrist
+ * keys like the board's own hash, but over Polyglot's fixed table of 781
+ * random numbers ("Random64" in Polyglot's pg_key.c), so books built by
+ * other programs can be read:
+ *
+ * - 0 to 767: a piece on a square, 64 * kind + 8 * rank + file, with kinds
+ *   black pawn, white pawn, black knight, white knight and so on up to white
+ *   king, and rank 0 being rank 1
+ * - 768 to 771: white kingside, white queenside, black kingside and black
+ *   queenside castling rights
+ * - 772 to 779: the file of an en passant capture, only when a pawn of the
+ *   side to move is actually next to the pawn that can be taken
+ * - 780: white to move
+ *
+ * The table is loaded from a text file holding the 781 numbers in order,
+ * for example the C array copied out of pg_key.c. Every table is checked
+ * against the keys Polyglot documents for the starting position, 1.e4 and
+ * 1.e4 d5, which between them cover pieces, castling, the side to move and
+ * an en passant file, so one that is truncated, shifted or simply a
+ * different table is refused rather than silently missing every book
+ * entry.
+ *
+ * @author Joe
+ */
+public class PolyglotKeys {
+
+    public static final int KEY_COUNT = 781;
+
+    private static final int CASTLING = 768;
+    private static final int EN_PASSANT = 772;
+    private static final int WHITE_TO_MOVE = 780;
+
+    // positions and their keys with the real table, from Polyglot's book
+    // format description
+    static final String[] KNOWN_POSITIONS = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+        "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2",
+    };
+    static final long[] KNOWN_KEYS = {
+        0x463b96181691fc9cL,
+        0x823c9b50fd114196L,
+        0x0756b94461c50fb0L,
+    };
+
+    // Polyglot kind / 2 by ChessPieceType ordinal: PAWN, ROOK, KNIGHT,
+    // BISHOP, QUEEN, KING
+    private static final int[] KIND = {0, 3, 1, 2, 4, 5};
+
+    private static final Pattern NUMBER =
+        Pattern.compile("(?:0[xX])?([0-9a-fA-F]{16})");
+
+    private final long[] random;
+
+    /**
+     * @param random the 781 Polyglot random numbers, in order
+     * @throws IllegalArgumentException if there are not 781 of them or
+     * they do not give the documented positions their Polyglot keys
+     */
+    public PolyglotKeys(long[] random) {
+        if (random.length != KEY_COUNT) {
+            throw new IllegalArgumentException("Polyglot needs " + KEY_COUNT
+                    + " random numbers, got " + random.length);
+        }
+        this.random = random.clone();
+        for (int i = 0; i < KNOWN_POSITIONS.length; i++) {
+            long key = key(new ChessBoard(KNOWN_POSITIONS[i]));
+            if (key != KNOWN_KEYS[i]) {
+                throw new IllegalArgumentException("not Polyglot's table: "
+                        + KNOWN_POSITIONS[i] + " has key "
+                        + Long.toHexString(key) + ", not "
+                        + Long.toHexString(KNOWN_KEYS[i]));
+            }
+        }
+    }
+
+    /**
+     * Reads the random numbers from a text file. Every 16 digit hex number,
+     * with or without 0x and a C suffix like ULL, is taken in order and
+     * anything else is ignored.
+     *
+     * @param file the file
+     * @return the keys
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if it does not hold 781 numbers or
+     * they are not Polyglot's
+     */
+    public static PolyglotKeys load(Path file) throws IOException {
+        String text = new String(Files.readAllBytes(file),
+                StandardCharsets.US_ASCII);
+        Matcher m = NUMBER.matcher(text);
+        long[] random = new long[KEY_COUNT];
+        int count = 0;
+        while (m.find()) {
+            if (count == KEY_COUNT) {
+                throw new IllegalArgumentException(
+                        "more than " + KEY_COUNT + " numbers in " + file);
+            }
+            random[count++] = Long.parseUnsignedLong(m.group(1), 16);
+        }
+        if (count != KEY_COUNT) {
+            throw new IllegalArgumentException("expected " + KEY_COUNT
+                    + " numbers in " + file + ", found " + count);
+        }
+        return new PolyglotKeys(random);
+    }
+
+    /**
+     * @param board the position
+     * @return its Polyglot key
+     */
+    public long key(ChessBoard board) {
+        long key = 0;
+        for (Side side : Side.values()) {
+            for (ChessPiece.ChessPieceType type
+                    : ChessPiece.ChessPieceType.values()) {
+                int kind = 2 * KIND[type.ordinal()]
+                    + (side == Side.WHITE ? 1 : 0);
+                long pieces = board.getBitboard(side, type);
+                while (pieces != Bitboards.EMPTY) {
+                    // Polyglot counts ranks from white's side
+                    int sq = Bitboards.lowestSquare(pieces) ^ 56;
+                    pieces &= pieces - 1;
+                    key ^= random[64 * kind + sq];
+                }
+            }
+        }
+
+        if (board.hasCastlingRight(Side.WHITE, true)) {
+            key ^= random[CASTLING];
+        }
+        if (board.hasCastlingRight(Side.WHITE, false)) {
+            key ^= random[CASTLING + 1];
+        }
+        if (board.hasCastlingRight(Side.BLACK, true)) {
+            key ^= random[CASTLING + 2];
+        }
+        if (board.hasCastlingRight(Side.BLACK, false)) {
+            key ^= random[CASTLING + 3];
+        }
+
+        int target = board.getEnPassantPawnSquare();
+        if (target >= 0) {
+            long besides = Bitboards.EMPTY;
+            int col = Bitboards.col(target);
+            if (col > 0) {
+                besides |= Bitboards.bit(target - 1);
+            }
+            if (col < 7) {
+                besides |= Bitboards.bit(target + 1);
+            }
+            if ((besides & board.getBitboard(board.getSideToMove(),
+                    ChessPiece.ChessPieceType.PAWN)) != Bitboards.EMPTY) {
+                key ^= random[EN_PASSANT + col];
+            }
+        }
+
+        if (board.getSideToMove() == Side.WHITE) {
+            key ^= random[WHITE_TO_MOVE];
+        }
+        return key;
+    }
+}
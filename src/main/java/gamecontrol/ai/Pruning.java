@@ -0,0 +1,42 @@
+package gamecontrol.ai;
+
+/**
+ * The selective parts of AlphaBetaEngine's search, each of which can be
+ * switched off on its own to measure what it is worth. They all skip or
+ * shorten lines that are very unlikely to matter, trading a little accuracy
+ * for a lot of depth.
+ *
+ * @author Joe
+ */
+public enum Pruning {
+
+    /**
+     * Lets the opponent move twice in a row with a reduced search. If the
+     * side to move is still winning after giving away a move, a real move
+     * will do even better, so the node fails high without searching one.
+     * Skipped in check and with only king and pawns left, where passing
+     * could be the best move (zugzwang).
+     */
+    NULL_MOVE,
+
+    /**
+     * Searches quiet moves that MoveOrdering puts late in the list less
+     * deeply, more so the later they come and the worse their history.
+     * A reduced move that beats alpha is searched again at full depth.
+     */
+    LATE_MOVE_REDUCTIONS,
+
+    /**
+     * Fails high near the leaves when the static evaluation beats beta by
+     * more than a margin that grows with the depth left (also known as
+     * static null move pruning).
+     */
+    REVERSE_FUTILITY,
+
+    /**
+     * Skips quiet moves one or two plies from the leaves when the static
+     * evaluation plus a margin cannot reach alpha. Moves that give check
+     * are always searched.
+     */
+    FUTILITY
+}
@@ -0,0 +1,111 @@
+package gamecontrol.ai;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one finished iteration of AlphaBetaEngine's
+ * iterative deepening, lasting as long as the iteration did. It carries
+ * the same numbers as SearchStats, totals for the search so far, so a
+ * recording shows how a search went without changing what it prints:
+ *
+ *     java -XX:StartFlightRecording=filename=search.jfr ...
+ *     jfr print --events chess.SearchIteration search.jfr
+ *
+ * @author Joe
+ */
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Category({"Chess", "Search"})
+@Description("One finished iteration of iterative deepening")
+@StackTrace(false)
+class SearchIterationEvent extends Event {
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Score")
+    @Description("Centipawns for the side to move")
+    int score;
+
+    @Label("Iteration Nodes")
+    long iterationNodes;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Quiescence Nodes")
+    long quiescenceNodes;
+
+    @Label("Nodes per Second")
+    @Frequency
+    long nodesPerSecond;
+
+    @Label("Quiescence Nodes per Second")
+    @Frequency
+    long quiescenceNodesPerSecond;
+
+    @Label("TT Probes")
+    long tableProbes;
+
+    @Label("TT Hit Rate")
+    @Percentage
+    double tableHitRate;
+
+    @Label("Effective Branching Factor")
+    double branchingFactor;
+
+    @Label("First Move Cutoff Rate")
+    @Percentage
+    double firstMoveCutoffRate;
+
+    @Label("Null Move Cutoffs")
+    long nullMoveCutoffs;
+
+    @Label("Reverse Futility Cutoffs")
+    long reverseFutilityCutoffs;
+
+    @Label("Futility Prunes")
+    long futilityPrunes;
+
+    @Label("Late Move Reductions")
+    long lateMoveReductions;
+
+    @Label("Late Move Researches")
+    long lateMoveResearches;
+
+    /**
+     * Fills the event in and commits it, if it is being recorded.
+     *
+     * @param stats the search's stats, with iteration just added
+     * @param iteration the iteration that finished
+     */
+    void commit(SearchStats stats, SearchStats.Iteration iteration) {
+        if (!shouldCommit()) {
+            return;
+        }
+        depth = iteration.getDepth();
+        score = iteration.getScore();
+        iterationNodes = iteration.getNodes();
+        nodes = stats.getNodes();
+        quiescenceNodes = stats.getQuiescenceNodes();
+        nodesPerSecond = (long) stats.getNodesPerSecond();
+        quiescenceNodesPerSecond = (long) stats.getQuiescenceNodesPerSecond();
+        tableProbes = stats.getTableProbes();
+        tableHitRate = stats.getTableHitRate();
+        branchingFactor = iteration.getBranchingFactor();
+        firstMoveCutoffRate = stats.getFirstMoveCutoffRate();
+        nullMoveCutoffs = stats.getNullMoveCutoffs();
+        reverseFutilityCutoffs = stats.getReverseFutilityCutoffs();
+        futilityPrunes = stats.getFutilityPrunes();
+        lateMoveReductions = stats.getLateMoveReductions();
+        lateMoveResearches = stats.getLateMoveResearches();
+        commit();
+    }
+}
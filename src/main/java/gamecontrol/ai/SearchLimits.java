@@ -0,0 +1,73 @@
+package gamecontrol.ai;
+
+/**
+ * How much a search may spend on one move: a depth cap, a time budget in
+ * milliseconds and a node budget. UNLIMITED switches a budget off. The
+ * search stops at whichever limit is reached first and plays the best move
+ * of the last depth it finished.
+ *
+ * @author Joe
+ */
+public class SearchLimits {
+
+    public static final long UNLIMITED = 0;
+
+    private int maxDepth;
+    private long moveTimeMillis;
+    private long maxNodes;
+
+    /**
+     * @param maxDepth the deepest iteration to start
+     * @param moveTimeMillis time budget per move, or UNLIMITED
+     * @param maxNodes node budget per move, or UNLIMITED
+     */
+    public SearchLimits(int maxDepth, long moveTimeMillis, long maxNodes) {
+        if (maxDepth < 1 || moveTimeMillis < 0 || maxNodes < 0) {
+            throw new IllegalArgumentException("invalid search limits");
+        }
+        this.maxDepth = maxDepth;
+        this.moveTimeMillis = moveTimeMillis;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @return limits that search exactly depth plies, however long it takes
+     */
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * @return limits that deepen until millis milliseconds have passed
+     */
+    public static SearchLimits moveTime(long millis) {
+        return new SearchLimits(Integer.MAX_VALUE, millis, UNLIMITED);
+    }
+
+    /**
+     * @return limits that deepen until nodes positions have been searched
+     */
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(Integer.MAX_VALUE, UNLIMITED, nodes);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getMoveTimeMillis() {
+        return moveTimeMillis;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    @Override
+    public String toString() {
+        return "depth " + maxDepth + ", time "
+            + (moveTimeMillis == UNLIMITED ? "unlimited" : moveTimeMillis
+                + " ms") + ", nodes "
+            + (maxNodes == UNLIMITED ? "unlimited" : maxNodes);
+    }
+}
@@ -0,0 +1,91 @@
+package gamecontrol.ai;
+
+import model.chess.PackedMove;
+
+/**
+ * What a search found: the best move, its score, how deep the search that
+ * found it went and the principal variation, the line of play the search
+ * expects from both sides starting with the best move. Results returned
+ * by a search also carry its SearchStats.
+ *
+ * @author Joe
+ */
+public class SearchResult {
+
+    private int move;
+    private int score;
+    private int depth;
+    private int[] principalVariation;
+    private SearchStats stats;
+
+    /**
+     * @param move the best move as a PackedMove int, PackedMove.NONE if the
+     * side to move has no moves
+     * @param score centipawns from the side to move's point of view
+     * @param depth the depth the search completed
+     */
+    public SearchResult(int move, int score, int depth) {
+        this(move, score, depth, move == PackedMove.NONE
+            ? new int[0] : new int[] {move});
+    }
+
+    /**
+     * @param move the best move as a PackedMove int, PackedMove.NONE if the
+     * side to move has no moves
+     * @param score centipawns from the side to move's point of view
+     * @param depth the depth the search completed
+     * @param principalVariation the expected line as PackedMove ints,
+     * starting with move
+     */
+    public SearchResult(int move, int score, int depth,
+            int[] principalVariation) {
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.principalVariation = principalVariation.clone();
+    }
+
+    public int getMove() {
+        return move;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the expected line as PackedMove ints, starting with the best
+     * move. It can stop short of the search depth where the line ran into
+     * a transposition table cutoff.
+     */
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    /**
+     * @return what the search that found this did, null for a result that
+     * did not come from a search
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    void setStats(SearchStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder pv = new StringBuilder();
+        for (int m : principalVariation) {
+            pv.append(' ').append(PackedMove.toString(m));
+        }
+        return "depth " + depth + " score " + score + " move "
+            + (move == PackedMove.NONE ? "none" : PackedMove.toString(move))
+            + " pv" + pv;
+    }
+}
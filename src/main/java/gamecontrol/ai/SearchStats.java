@@ -0,0 +1,271 @@
+package gamecontrol.ai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a search did, for telling whether a change made the engine faster
+ * or just different: how many nodes it visited and how fast, how often the
+ * TranspositionTable had the position, how well moves were ordered and how
+ * much the Pruning techniques cut, plus the cost of each iteration of
+ * iterative deepening.
+ *
+ * Cutoff and pruning counts are for the main search, not quiescence.
+ *
+ * @author Joe
+ */
+public class SearchStats {
+
+    // counted by AlphaBetaEngine as it goes
+    long nodes;
+    long quiescenceNodes;
+    long tableProbes;
+    long tableHits;
+    long betaCutoffs;
+    long firstMoveCutoffs;
+    long nullMoveCutoffs;
+    long reverseFutilityCutoffs;
+    long futilityPrunes;
+    long lateMoveReductions;
+    long lateMoveResearches;
+    long nanos;
+
+    private List<Iteration> iterations = new ArrayList<>();
+
+    /**
+     * One finished iteration of iterative deepening.
+     */
+    public static class Iteration {
+        private final int depth;
+        private final int score;
+        private final long nodes;
+        private final long nanos;
+        private final double branchingFactor;
+
+        Iteration(int depth, int score, long nodes, long nanos,
+                double branchingFactor) {
+            this.depth = depth;
+            this.score = score;
+            this.nodes = nodes;
+            this.nanos = nanos;
+            this.branchingFactor = branchingFactor;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * @return nodes visited by this iteration alone
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @return time since the search started, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the effective branching factor, this iteration's nodes
+         * over the previous one's, 0 for the first
+         */
+        public double getBranchingFactor() {
+            return branchingFactor;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("depth %d score %d nodes %d ebf %.2f",
+                    depth, score, nodes, branchingFactor);
+        }
+    }
+
+    /**
+     * @return nodes visited, quiescence included
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    /**
+     * @return how long the search took, in nanoseconds
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    public double getNodesPerSecond() {
+        return perSecond(nodes);
+    }
+
+    public double getQuiescenceNodesPerSecond() {
+        return perSecond(quiescenceNodes);
+    }
+
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    /**
+     * @return probes that found an entry for the position, whether or not
+     * it was deep enough to cut off
+     */
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    /**
+     * @return the share of main search nodes that probed the table
+     */
+    public double getTableProbeRate() {
+        return ratio(tableProbes, nodes - quiescenceNodes);
+    }
+
+    public double getTableHitRate() {
+        return ratio(tableHits, tableProbes);
+    }
+
+    /**
+     * @return nodes that failed high after searching a move
+     */
+    public long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    /**
+     * @return beta cutoffs by the first move searched
+     */
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * @return the share of beta cutoffs by the first move searched, a
+     * measure of move ordering, ideally over 0.9
+     */
+    public double getFirstMoveCutoffRate() {
+        return ratio(firstMoveCutoffs, betaCutoffs);
+    }
+
+    public long getNullMoveCutoffs() {
+        return nullMoveCutoffs;
+    }
+
+    public long getReverseFutilityCutoffs() {
+        return reverseFutilityCutoffs;
+    }
+
+    /**
+     * @return quiet moves skipped by futility pruning
+     */
+    public long getFutilityPrunes() {
+        return futilityPrunes;
+    }
+
+    /**
+     * @return moves searched at reduced depth
+     */
+    public long getLateMoveReductions() {
+        return lateMoveReductions;
+    }
+
+    /**
+     * @return reduced moves that beat alpha and were searched again at full
+     * depth
+     */
+    public long getLateMoveResearches() {
+        return lateMoveResearches;
+    }
+
+    /**
+     * @return the finished iterations, shallowest first
+     */
+    public List<Iteration> getIterations() {
+        return Collections.unmodifiableList(iterations);
+    }
+
+    /**
+     * @return the last iteration's effective branching factor, 0 with
+     * fewer than two
+     */
+    public double getBranchingFactor() {
+        return iterations.isEmpty()
+            ? 0 : iterations.get(iterations.size() - 1).getBranchingFactor();
+    }
+
+    // records an iteration that finished with the counts as they are now
+    Iteration addIteration(int depth, int score) {
+        long done = 0;
+        for (Iteration i : iterations) {
+            done += i.getNodes();
+        }
+        long iterationNodes = nodes - done;
+        double branchingFactor = iterations.isEmpty()
+            ? 0
+            : ratio(iterationNodes,
+                    iterations.get(iterations.size() - 1).getNodes());
+        Iteration iteration = new Iteration(depth, score, iterationNodes,
+                nanos, branchingFactor);
+        iterations.add(iteration);
+        return iteration;
+    }
+
+    SearchStats copy() {
+        SearchStats copy = new SearchStats();
+        copy.add(this);
+        copy.nanos = nanos;
+        copy.iterations = new ArrayList<>(iterations);
+        return copy;
+    }
+
+    // adds another thread's counts, keeping this one's time and iterations
+    void add(SearchStats other) {
+        nodes += other.nodes;
+        quiescenceNodes += other.quiescenceNodes;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        betaCutoffs += other.betaCutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        nullMoveCutoffs += other.nullMoveCutoffs;
+        reverseFutilityCutoffs += other.reverseFutilityCutoffs;
+        futilityPrunes += other.futilityPrunes;
+        lateMoveReductions += other.lateMoveReductions;
+        lateMoveResearches += other.lateMoveResearches;
+    }
+
+    private double perSecond(long count) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    private static double ratio(long a, long b) {
+        return b == 0 ? 0 : (double) a / b;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes %d (%.0f/s), qnodes %d (%.0f/s),"
+                + " tt probes %d hit %.1f%%, ebf %.2f,"
+                + " first move cutoffs %.1f%%, null move cutoffs %d,"
+                + " reverse futility %d, futility %d, reductions %d"
+                + " (%d researched)",
+                nodes, getNodesPerSecond(), quiescenceNodes,
+                getQuiescenceNodesPerSecond(), tableProbes,
+                100 * getTableHitRate(), getBranchingFactor(),
+                100 * getFirstMoveCutoffRate(), nullMoveCutoffs,
+                reverseFutilityCutoffs, futilityPrunes, lateMoveReductions,
+                lateMoveResearches);
+    }
+}
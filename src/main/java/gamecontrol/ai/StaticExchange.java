@@ -0,0 +1,119 @@
+package gamecontrol.ai;
+
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.PackedMove;
+
+/**
+ * Static exchange evaluation: what a capture wins or loses in material once
+ * both sides have made every recapture on the target square that pays for
+ * them, cheapest attacker first. Pieces behind a capturer, like a rook
+ * behind a rook, join in when the one in front has moved.
+ *
+ * Nothing is played on the board, which makes it much cheaper than
+ * searching the exchange, at the cost of ignoring pins, checks and
+ * promotions during the exchange.
+ *
+ * @author Joe
+ */
+public class StaticExchange {
+
+    // cheapest first, the order attackers join the exchange in
+    private static final ChessPiece.ChessPieceType[] BY_VALUE = {
+        ChessPiece.ChessPieceType.PAWN, ChessPiece.ChessPieceType.KNIGHT,
+        ChessPiece.ChessPieceType.BISHOP, ChessPiece.ChessPieceType.ROOK,
+        ChessPiece.ChessPieceType.QUEEN, ChessPiece.ChessPieceType.KING};
+
+    // more than everything else on the board, nothing may take the king
+    private static final int KING_VALUE = 20000;
+
+    // an exchange on one square has at most 32 captures, the size of the
+    // scratch array see works in
+    static final int MAX_EXCHANGE = 32;
+
+    /**
+     * @param board the position the move is played in
+     * @param move a PackedMove int, usually a capture
+     * @return the material the side making the move gains, in centipawns,
+     * negative if the exchange loses material
+     */
+    public static int see(ChessBoard board, int move) {
+        return see(board, move, new int[MAX_EXCHANGE]);
+    }
+
+    /**
+     * see without allocating, for the search, which calls it for every
+     * capture it scores.
+     *
+     * @param board the position the move is played in
+     * @param move a PackedMove int, usually a capture
+     * @param gain scratch space of MAX_EXCHANGE ints, owned by the calling
+     * thread
+     * @return the material the side making the move gains
+     */
+    static int see(ChessBoard board, int move, int[] gain) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Side side = board.getPieceAt(from).getSide();
+
+        long occupied = board.getOccupied() ^ Bitboards.bit(from);
+        int onSquare = value(typeAt(board, from));
+        gain[0] = 0;
+        if (PackedMove.isEnPassant(move)) {
+            gain[0] = value(ChessPiece.ChessPieceType.PAWN);
+            occupied ^= Bitboards.bit(board.getEnPassantPawnSquare());
+        } else if (PackedMove.isCapture(move)) {
+            gain[0] = value(typeAt(board, to));
+        }
+        if (PackedMove.isPromotion(move)) {
+            onSquare = value(PackedMove.promotion(move));
+            gain[0] += onSquare - value(ChessPiece.ChessPieceType.PAWN);
+        }
+
+        int d = 0;
+        while (d < MAX_EXCHANGE - 1) {
+            side = side == Side.WHITE ? Side.BLACK : Side.WHITE;
+            long attackers = board.attackersOf(to, side, occupied);
+            if (attackers == Bitboards.EMPTY) {
+                break;
+            }
+            int attacker = -1;
+            ChessPiece.ChessPieceType attackerType = null;
+            for (ChessPiece.ChessPieceType type : BY_VALUE) {
+                long ofType = attackers & board.getBitboard(side, type);
+                if (ofType != Bitboards.EMPTY) {
+                    attacker = Bitboards.lowestSquare(ofType);
+                    attackerType = type;
+                    break;
+                }
+            }
+            d++;
+            // what the capturing side has gained if the exchange stops here
+            gain[d] = onSquare - gain[d - 1];
+            if (Math.max(-gain[d - 1], gain[d]) < 0) {
+                // this capture cannot help whoever makes it, so leave it out
+                d--;
+                break;
+            }
+            occupied ^= Bitboards.bit(attacker);
+            onSquare = value(attackerType);
+        }
+        // each side stops the exchange when carrying on would lose
+        for (; d > 0; d--) {
+            gain[d - 1] = -Math.max(-gain[d - 1], gain[d]);
+        }
+        return gain[0];
+    }
+
+    private static int value(ChessPiece.ChessPieceType type) {
+        return type == ChessPiece.ChessPieceType.KING ? KING_VALUE
+            : Evaluation.pieceValue(type);
+    }
+
+    private static ChessPiece.ChessPieceType typeAt(ChessBoard board,
+            int square) {
+        return (ChessPiece.ChessPieceType) board.getPieceAt(square).getType();
+    }
+}
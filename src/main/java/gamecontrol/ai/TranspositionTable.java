@@ -0,0 +1,168 @@
+package gamecontrol.ai;
+
+import java.util.Arrays;
+
+/**
+ * Remembers search results by position hash so that a position reached
+ * again through a different move order is not searched twice.
+ *
+ * The table is one long[] of buckets, each bucket two entries of two longs:
+ * the key XORed with the data, then the data. Threads read and write
+ * without locks; an entry torn by a concurrent write fails the XOR check
+ * and reads as a miss. The first entry of a bucket keeps the deepest result
+ * of the current search, the second always takes the newest, so shallow
+ * results cannot push out expensive deep ones.
+ *
+ * Data is packed into one long, see the static accessors. A probe that
+ * misses returns 0, which no stored entry is equal to.
+ *
+ * @author Joe
+ */
+public class TranspositionTable {
+
+    /** The score is at least the stored one, the search failed high */
+    public static final int LOWER = 1;
+    /** The score is at most the stored one, the search failed low */
+    public static final int UPPER = 2;
+    /** The score is exact */
+    public static final int EXACT = LOWER | UPPER;
+
+    // data layout, low bits first: bound 2, depth 7, generation 8, move 19,
+    // score 20
+    private static final int DEPTH_SHIFT = 2;
+    private static final int GENERATION_SHIFT = 9;
+    private static final int MOVE_SHIFT = 17;
+    private static final int SCORE_SHIFT = 36;
+    private static final int SCORE_OFFSET = 1 << 19;
+    private static final long DEPTH_MASK = 0x7F;
+    private static final long GENERATION_MASK = 0xFF;
+    private static final long MOVE_MASK = (1L << 19) - 1;
+    private static final long SCORE_MASK = (1L << 20) - 1;
+
+    private static final int MAX_DEPTH = (int) DEPTH_MASK;
+
+    // longs per bucket: two entries of key and data
+    private static final int BUCKET_LONGS = 4;
+
+    private final long[] table;
+    private final int bucketMask;
+    private int generation;
+
+    /**
+     * @param megabytes table size, rounded down to a power of two number of
+     * buckets
+     */
+    public TranspositionTable(int megabytes) {
+        long buckets = Long.highestOneBit(
+                Math.max(1, megabytes * 1024L * 1024L / (BUCKET_LONGS * 8)));
+        if (buckets > 1 << 28) {
+            throw new IllegalArgumentException(
+                    "transposition table too large");
+        }
+        table = new long[(int) buckets * BUCKET_LONGS];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * Starts a new search. Entries from earlier searches stay usable but no
+     * longer protect their slots against replacement.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & (int) GENERATION_MASK;
+    }
+
+    /**
+     * @param hash the position's Zobrist hash
+     * @return the stored data, or 0 if the position is not in the table
+     */
+    public long probe(long hash) {
+        int i = index(hash);
+        long data = table[i + 1];
+        if ((table[i] ^ data) == hash) {
+            return data;
+        }
+        data = table[i + 3];
+        if ((table[i + 2] ^ data) == hash) {
+            return data;
+        }
+        return 0;
+    }
+
+    /**
+     * @param hash the position's Zobrist hash
+     * @param move the best move as a PackedMove int, or PackedMove.NONE
+     * @param score the score, with mate scores made relative to the
+     * position
+     * @param depth the remaining depth that was searched
+     * @param bound LOWER, UPPER or EXACT
+     */
+    public void store(long hash, int move, int score, int depth, int bound) {
+        long data = bound
+            | (long) Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT
+            | (long) generation << GENERATION_SHIFT
+            | (move & MOVE_MASK) << MOVE_SHIFT
+            | (score + SCORE_OFFSET & SCORE_MASK) << SCORE_SHIFT;
+        int i = index(hash);
+        long deepest = table[i + 1];
+        if ((table[i] ^ deepest) == hash
+                || generation(deepest) != generation
+                || depth >= depth(deepest)) {
+            table[i] = hash ^ data;
+            table[i + 1] = data;
+        } else {
+            table[i + 2] = hash ^ data;
+            table[i + 3] = data;
+        }
+    }
+
+    public static int move(long data) {
+        return (int) (data >>> MOVE_SHIFT & MOVE_MASK);
+    }
+
+    public static int score(long data) {
+        return (int) (data >>> SCORE_SHIFT & SCORE_MASK) - SCORE_OFFSET;
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT & DEPTH_MASK);
+    }
+
+    public static int bound(long data) {
+        return (int) data & EXACT;
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> GENERATION_SHIFT & GENERATION_MASK);
+    }
+
+    /**
+     * @return the number of entries the table holds
+     */
+    public int getCapacity() {
+        return (bucketMask + 1) * 2;
+    }
+
+    /**
+     * @return the permille of sampled first slots filled this search
+     */
+    public int getUsagePermille() {
+        int sample = Math.min(1000, bucketMask + 1);
+        int used = 0;
+        for (int b = 0; b < sample; b++) {
+            long data = table[b * BUCKET_LONGS + 1];
+            if (data != 0 && generation(data) == generation) {
+                used++;
+            }
+        }
+        return used * 1000 / sample;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        generation = 0;
+    }
+
+    private int index(long hash) {
+        return ((int) (hash ^ (hash >>> 32)) & bucketMask) * BUCKET_LONGS;
+    }
+}
@@ -39,6 +39,23 @@ public interface Board {
     Map<Piece, Set<Move>> generateAllMovesForSide(Side s)
         throws SideHasNoMovesException;
 
+    /**
+     * Answers if the given side's king is currently under attack
+     *
+     * @param s Side in question
+     * @return whether or not s is in check
+     */
+    boolean isInCheck(Side s);
+
+    /**
+     * Returns a 64 bit hash of the position: where the pieces stand, who
+     * moves next, and any castling or en passant rights. Equal positions
+     * always hash the same, and different ones almost never do.
+     *
+     * @return the position's hash
+     */
+    long hash();
+
     /**
      * Returns the positions of all active on the board pieces
      *
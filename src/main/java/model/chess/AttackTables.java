@@ -0,0 +1,243 @@
+package model.chess;
+
+import model.Side;
+
+/**
+ * Precomputed attack sets for every piece type, built once when the class
+ * is loaded.
+ *
+ * Knights, kings and pawns only ever attack the same few squares, so they
+ * get one bitboard per square. Rooks and bishops use magic bitboards: the
+ * blockers on a slider's lines are multiplied by a per-square magic number
+ * and the top bits of the product index a table holding the attack set for
+ * exactly that blocker pattern. Magic numbers are found by a seeded random
+ * search at load time, so no hand-copied constants are needed.
+ *
+ * @author Joe
+ */
+public class AttackTables {
+
+    private static final int PAWN_INDEX =
+        ChessPiece.ChessPieceType.PAWN.ordinal();
+    private static final int KNIGHT_INDEX =
+        ChessPiece.ChessPieceType.KNIGHT.ordinal();
+    private static final int BISHOP_INDEX =
+        ChessPiece.ChessPieceType.BISHOP.ordinal();
+    private static final int ROOK_INDEX =
+        ChessPiece.ChessPieceType.ROOK.ordinal();
+    private static final int QUEEN_INDEX =
+        ChessPiece.ChessPieceType.QUEEN.ordinal();
+    private static final int KING_INDEX =
+        ChessPiece.ChessPieceType.KING.ordinal();
+
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+    private static final long[][] PAWN = new long[2][64];
+
+    private static final int[][] ROOK_STEPS = {{-1, 0}, {1, 0}, {0, -1},
+        {0, 1}};
+    private static final int[][] BISHOP_STEPS = {{-1, -1}, {-1, 1}, {1, -1},
+        {1, 1}};
+
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] ROOK_MAGICS = new long[64];
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final long[][] ROOK_TABLE = new long[64][];
+
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final long[] BISHOP_MAGICS = new long[64];
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final long[][] BISHOP_TABLE = new long[64][];
+
+    // fixed seed so every run builds the same tables
+    private static long seed = 0x2015C0DEL;
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            int row = Bitboards.row(sq);
+            int col = Bitboards.col(sq);
+            for (int dx = -2; dx <= 2; dx++) {
+                for (int dy = -2; dy <= 2; dy++) {
+                    if (dx != dy && dx != 0 && dy != 0 && dx + dy != 0) {
+                        KNIGHT[sq] |= Bitboards.bit(row + dy, col + dx);
+                    }
+                    if (Math.abs(dx) <= 1 && Math.abs(dy) <= 1
+                            && (dx != 0 || dy != 0)) {
+                        KING[sq] |= Bitboards.bit(row + dy, col + dx);
+                    }
+                }
+            }
+            for (Side side : Side.values()) {
+                int dy = side == Side.WHITE ? -1 : 1;
+                PAWN[side.ordinal()][sq] = Bitboards.bit(row + dy, col - 1)
+                    | Bitboards.bit(row + dy, col + 1);
+            }
+
+            initSlider(sq, ROOK_STEPS, ROOK_MASKS, ROOK_MAGICS, ROOK_SHIFTS,
+                    ROOK_TABLE);
+            initSlider(sq, BISHOP_STEPS, BISHOP_MASKS, BISHOP_MAGICS,
+                    BISHOP_SHIFTS, BISHOP_TABLE);
+        }
+    }
+
+    public static long knightAttacks(int square) {
+        return KNIGHT[square];
+    }
+
+    public static long kingAttacks(int square) {
+        return KING[square];
+    }
+
+    /**
+     * @param side the side of the attacking pawn
+     * @param square the square the pawn stands on
+     * @return the squares a pawn of that side attacks from square
+     */
+    public static long pawnAttacks(Side side, int square) {
+        return PAWN[side.ordinal()][square];
+    }
+
+    public static long rookAttacks(int square, long occupied) {
+        return ROOK_TABLE[square][(int) (((occupied & ROOK_MASKS[square])
+                * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square])];
+    }
+
+    public static long bishopAttacks(int square, long occupied) {
+        return BISHOP_TABLE[square][(int) (((occupied & BISHOP_MASKS[square])
+                * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+    }
+
+    public static long queenAttacks(int square, long occupied) {
+        return rookAttacks(square, occupied)
+            | bishopAttacks(square, occupied);
+    }
+
+    /**
+     * Attacks of a piece of the given type standing on square. Pawns answer
+     * with their capture squares.
+     */
+    public static long attacks(ChessPiece.ChessPieceType type, Side side,
+            int square, long occupied) {
+        switch (type) {
+        case PAWN:
+            return pawnAttacks(side, square);
+        case KNIGHT:
+            return knightAttacks(square);
+        case BISHOP:
+            return bishopAttacks(square, occupied);
+        case ROOK:
+            return rookAttacks(square, occupied);
+        case QUEEN:
+            return queenAttacks(square, occupied);
+        case KING:
+            return kingAttacks(square);
+        default:
+            return Bitboards.EMPTY;
+        }
+    }
+
+    /**
+     * Finds every piece of one side attacking a square.
+     *
+     * @param square the square in question
+     * @param by the attacking side
+     * @param occupied the occupancy sliders are blocked by
+     * @param bitboards piece bitboards indexed like Bitboards.index
+     * @return a bitboard of by's pieces attacking square
+     */
+    public static long attackersOf(int square, Side by, long occupied,
+            long[] bitboards) {
+        int base = by.ordinal() * Bitboards.PIECE_TYPES;
+        long pawns = bitboards[base + PAWN_INDEX];
+        long knights = bitboards[base + KNIGHT_INDEX];
+        long bishops = bitboards[base + BISHOP_INDEX];
+        long rooks = bitboards[base + ROOK_INDEX];
+        long queens = bitboards[base + QUEEN_INDEX];
+        long king = bitboards[base + KING_INDEX];
+        Side other = by == Side.WHITE ? Side.BLACK : Side.WHITE;
+
+        return (pawnAttacks(other, square) & pawns)
+            | (knightAttacks(square) & knights)
+            | (kingAttacks(square) & king)
+            | (bishopAttacks(square, occupied) & (bishops | queens))
+            | (rookAttacks(square, occupied) & (rooks | queens));
+    }
+
+    private static void initSlider(int sq, int[][] steps, long[] masks,
+            long[] magics, int[] shifts, long[][] tables) {
+        // edge squares never block anything behind them, so leave them out
+        long mask = slowAttacks(sq, steps, Bitboards.EMPTY, true);
+        int bits = Long.bitCount(mask);
+        int size = 1 << bits;
+
+        long[] occupancies = new long[size];
+        long[] attacks = new long[size];
+        long subset = Bitboards.EMPTY;
+        for (int i = 0; i < size; i++) {
+            occupancies[i] = subset;
+            attacks[i] = slowAttacks(sq, steps, subset, false);
+            // Carry-Rippler trick to walk every subset of mask
+            subset = (subset - mask) & mask;
+        }
+
+        masks[sq] = mask;
+        shifts[sq] = 64 - bits;
+        long[] table = new long[size];
+        // used[i] == attempt marks slots filled by the current candidate
+        int[] used = new int[size];
+        int attempt = 0;
+        while (true) {
+            long magic = nextRandom() & nextRandom() & nextRandom();
+            if (Long.bitCount((mask * magic) & 0xFF00000000000000L) < 6) {
+                continue;
+            }
+            attempt++;
+            boolean collision = false;
+            for (int i = 0; i < size && !collision; i++) {
+                int index = (int) ((occupancies[i] * magic) >>> (64 - bits));
+                if (used[index] != attempt) {
+                    used[index] = attempt;
+                    table[index] = attacks[i];
+                } else if (table[index] != attacks[i]) {
+                    collision = true;
+                }
+            }
+            if (!collision) {
+                magics[sq] = magic;
+                tables[sq] = table;
+                return;
+            }
+        }
+    }
+
+    private static long slowAttacks(int sq, int[][] steps, long occupied,
+            boolean maskOnly) {
+        long result = Bitboards.EMPTY;
+        for (int[] step : steps) {
+            int row = Bitboards.row(sq) + step[0];
+            int col = Bitboards.col(sq) + step[1];
+            while (ChessUtils.posBoundsTest(row, col)) {
+                if (maskOnly && !ChessUtils.posBoundsTest(row + step[0],
+                        col + step[1])) {
+                    break;
+                }
+                long b = Bitboards.bit(row, col);
+                result |= b;
+                if ((occupied & b) != Bitboards.EMPTY) {
+                    break;
+                }
+                row += step[0];
+                col += step[1];
+            }
+        }
+        return result;
+    }
+
+    // xorshift64*
+    private static long nextRandom() {
+        seed ^= seed >>> 12;
+        seed ^= seed << 25;
+        seed ^= seed >>> 27;
+        return seed * 0x2545F4914F6CDD1DL;
+    }
+}
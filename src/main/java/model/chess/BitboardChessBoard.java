@@ -0,0 +1,450 @@
+package model.chess;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.Position;
+import model.Side;
+import model.SideHasNoMovesException;
+
+/**
+ * ChessBoard backed by one 64 bit occupancy bitboard per side and piece
+ * type. It follows the same rules as ChessBoard, but answers attack and
+ * path queries with a handful of bit operations instead of walking the
+ * board and looking pieces up in maps.
+ *
+ * @author Joe
+ */
+public class BitboardChessBoard implements Board {
+
+    // indexed by Bitboards.index
+    private long[] bitboards;
+    private long[] sideOccupancy;
+    private long occupied;
+
+    private Piece[] squares;
+
+    private boolean[] kingsideCastlingRules;
+    private boolean[] queensideCastlingRules;
+
+    // square of a pawn that just advanced two rows, or -1
+    private int enPassantPawnSquare;
+
+    private Side sideToMove;
+    // Zobrist key of the position, see Zobrist
+    private long hash;
+
+    //creates a chess board with all pieces in the right place
+    public BitboardChessBoard() {
+        bitboards = new long[2 * Bitboards.PIECE_TYPES];
+        sideOccupancy = new long[2];
+        squares = new Piece[64];
+        kingsideCastlingRules = new boolean[] {true, true};
+        queensideCastlingRules = new boolean[] {true, true};
+        enPassantPawnSquare = -1;
+        for (Side side : Side.values()) {
+            hash ^= Zobrist.kingsideCastling(side)
+                ^ Zobrist.queensideCastling(side);
+        }
+        sideToMove = Side.WHITE;
+
+        for (Side side : Side.values()) {
+            int frontRow = side.getFrontRow();
+            int backRow = side.getBackRow();
+
+            for (int i = 0; i < 8; i++) {
+                placePiece(new Pawn(side), Bitboards.square(frontRow, i));
+            }
+
+            placePiece(new Rook(side), Bitboards.square(backRow, 0));
+            placePiece(new Rook(side), Bitboards.square(backRow, 7));
+            placePiece(new Knight(side), Bitboards.square(backRow, 1));
+            placePiece(new Knight(side), Bitboards.square(backRow, 6));
+            placePiece(new Bishop(side), Bitboards.square(backRow, 2));
+            placePiece(new Bishop(side), Bitboards.square(backRow, 5));
+            placePiece(new Queen(side), Bitboards.square(backRow, 3));
+
+            placePiece(new King(side), Bitboards.square(backRow, 4));
+        }
+    }
+
+    @Override
+    public void movePiece(Piece p, Move m) {
+        validateCastling(p, m);
+
+        int start = Bitboards.square(m.getStart());
+        int dest = Bitboards.square(m.getDestination());
+
+        int captureSquare = dest;
+        if (m instanceof PawnCaptureMove
+                && ((PawnCaptureMove) m).isEnPassant()) {
+            captureSquare = Bitboards.square(
+                    ((PawnCaptureMove) m).getEnPassantCapturePosition());
+        }
+
+        if (squares[captureSquare] != null) {
+            removePiece(captureSquare);
+        }
+        removePiece(start);
+        placePiece(p, dest);
+
+        if (enPassantPawnSquare >= 0) {
+            hash ^= Zobrist.enPassant(Bitboards.col(enPassantPawnSquare));
+        }
+        enPassantPawnSquare = (p instanceof Pawn
+                && Math.abs(Bitboards.row(start) - Bitboards.row(dest)) == 2)
+            ? dest
+            : -1;
+        if (enPassantPawnSquare >= 0) {
+            hash ^= Zobrist.enPassant(Bitboards.col(enPassantPawnSquare));
+        }
+
+        if (opponent(p.getSide()) != sideToMove) {
+            hash ^= Zobrist.blackToMove();
+            sideToMove = opponent(p.getSide());
+        }
+    }
+
+    @Override
+    public Map<Piece, Set<Move>> generateAllMovesForSide(Side s)
+        throws SideHasNoMovesException {
+
+        boolean sideInCheck = isInCheck(s);
+        Map<Piece, Set<Move>> allMoves = new HashMap<>();
+        boolean sideHasMoves = false;
+
+        long pieces = sideOccupancy[s.ordinal()];
+        while (pieces != Bitboards.EMPTY) {
+            int from = Bitboards.lowestSquare(pieces);
+            pieces &= pieces - 1;
+
+            Piece p = squares[from];
+            Set<Move> moves = new HashSet<>();
+            if (p instanceof Pawn) {
+                addPawnMoves(from, s, moves);
+            } else {
+                long targets = AttackTables.attacks(
+                        (ChessPiece.ChessPieceType) p.getType(), s, from,
+                        occupied) & ~sideOccupancy[s.ordinal()];
+                boolean isJump = p instanceof Knight;
+                while (targets != Bitboards.EMPTY) {
+                    int to = Bitboards.lowestSquare(targets);
+                    targets &= targets - 1;
+                    if (isSafeForKing(from, to, -1, s)) {
+                        moves.add(new Move(Bitboards.position(from),
+                                Bitboards.position(to), isJump));
+                    }
+                }
+                if (p instanceof King && !sideInCheck) {
+                    addCastlingMoves(s, moves);
+                }
+            }
+
+            if (!moves.isEmpty()) {
+                sideHasMoves = true;
+            }
+            allMoves.put(p, moves);
+        }
+
+        if (!sideHasMoves) {
+            throw new SideHasNoMovesException(s.toString() + " has no moves.");
+        }
+
+        return allMoves;
+    }
+
+    @Override
+    public boolean pieceCanMove(Move m, Side movingSide) {
+        int start = Bitboards.square(m.getStart());
+        int dest = Bitboards.square(m.getDestination());
+
+        Piece pieceAtDest = squares[dest];
+        Piece mover = squares[start];
+
+        if (m instanceof CastlingMove) {
+            return mover instanceof King && canCastle(movingSide,
+                    ((CastlingMove) m).getCastlingType()
+                    == CastlingMove.CastlingType.KING_SIDE);
+        }
+
+        boolean positionAvailable = pieceAtDest == null;
+        boolean isEnPassantCapture = mover instanceof Pawn
+                && m instanceof PawnCaptureMove
+                && isEnPassantTarget(start, dest);
+
+        if (isEnPassantCapture) {
+            PawnCaptureMove pcm = (PawnCaptureMove) m;
+            pcm.setIsEnPassant(true);
+            pcm.setEnPassantCapturePosition(
+                    Bitboards.position(enPassantPawnSquare));
+        }
+
+        boolean canCapture = (!positionAvailable
+                && !pieceAtDest.getSide().equals(movingSide))
+                || isEnPassantCapture;
+
+        if (!positionAvailable && !canCapture) {
+            return false;
+        }
+
+        if (!canCapture && m.mustCapture()) {
+            return false;
+        }
+
+        if (canCapture && m.cannotCapture()) {
+            return false;
+        }
+
+        if (!m.isJump()
+                && (Bitboards.between(start, dest) & occupied)
+                != Bitboards.EMPTY) {
+            return false;
+        }
+
+        return isSafeForKing(start, dest,
+                isEnPassantCapture ? enPassantPawnSquare : -1, movingSide);
+    }
+
+    @Override
+    public Map<Piece, Position> getAllActivePiecesPositions() {
+        Map<Piece, Position> all = new HashMap<>();
+        long pieces = occupied;
+        while (pieces != Bitboards.EMPTY) {
+            int sq = Bitboards.lowestSquare(pieces);
+            pieces &= pieces - 1;
+            all.put(squares[sq], Bitboards.position(sq));
+        }
+        return all;
+    }
+
+    @Override
+    public boolean isInCheck(Side s) {
+        return isAttacked(kingSquare(s), opponent(s), occupied,
+                ~Bitboards.EMPTY);
+    }
+
+    /**
+     * @return the side to move, the opponent of whoever moved last
+     */
+    public Side getSideToMove() {
+        return sideToMove;
+    }
+
+    @Override
+    public long hash() {
+        return hash;
+    }
+
+    @Override
+    public Piece getPieceAt(Position p) {
+        return squares[Bitboards.square(p)];
+    }
+
+    @Override
+    public void replacePieceAt(Position pos, Piece newPiece) {
+        int sq = Bitboards.square(pos);
+        removePiece(sq);
+        placePiece(newPiece, sq);
+    }
+
+    private void addPawnMoves(int from, Side s, Set<Move> moves) {
+        Position start = Bitboards.position(from);
+        int row = Bitboards.row(from);
+        int col = Bitboards.col(from);
+        int dy = s == Side.WHITE ? -1 : 1;
+        int destRow = row + dy;
+        boolean promotes = destRow == 0 || destRow == 7;
+
+        int push = Bitboards.square(destRow, col);
+        if (squares[push] == null && isSafeForKing(from, push, -1, s)) {
+            Position dest = Bitboards.position(push);
+            moves.add(promotes
+                ? new PromotionMove(start, dest, false, true, false)
+                : new Move(start, dest, false, true, false));
+        }
+
+        if (row == s.getFrontRow()) {
+            int doublePush = Bitboards.square(row + 2 * dy, col);
+            if (squares[push] == null && squares[doublePush] == null
+                    && isSafeForKing(from, doublePush, -1, s)) {
+                moves.add(new Move(start, Bitboards.position(doublePush),
+                        false, true, false));
+            }
+        }
+
+        long captures = AttackTables.pawnAttacks(s, from);
+        while (captures != Bitboards.EMPTY) {
+            int to = Bitboards.lowestSquare(captures);
+            captures &= captures - 1;
+            Position dest = Bitboards.position(to);
+
+            boolean enemyAtDest = (sideOccupancy[opponent(s).ordinal()]
+                    & Bitboards.bit(to)) != Bitboards.EMPTY;
+            if (promotes) {
+                if (enemyAtDest && isSafeForKing(from, to, -1, s)) {
+                    moves.add(new PromotionMove(start, dest,
+                            false, false, true));
+                }
+            } else if (enemyAtDest) {
+                if (isSafeForKing(from, to, -1, s)) {
+                    moves.add(new PawnCaptureMove(start, dest,
+                            false, false, true));
+                }
+            } else if (isEnPassantTarget(from, to)
+                    && isSafeForKing(from, to, enPassantPawnSquare, s)) {
+                PawnCaptureMove pcm = new PawnCaptureMove(start, dest,
+                        false, false, true);
+                pcm.setIsEnPassant(true);
+                pcm.setEnPassantCapturePosition(
+                        Bitboards.position(enPassantPawnSquare));
+                moves.add(pcm);
+            }
+        }
+    }
+
+    private void addCastlingMoves(Side s, Set<Move> moves) {
+        Position start = Bitboards.position(
+                Bitboards.square(s.getBackRow(), 4));
+        if (canCastle(s, false)) {
+            moves.add(new CastlingMove(start, Bitboards.position(
+                    Bitboards.square(s.getBackRow(), 2)),
+                    CastlingMove.CastlingType.QUEEN_SIDE));
+        }
+        if (canCastle(s, true)) {
+            moves.add(new CastlingMove(start, Bitboards.position(
+                    Bitboards.square(s.getBackRow(), 6)),
+                    CastlingMove.CastlingType.KING_SIDE));
+        }
+    }
+
+    /**
+     * Castling needs the right, an empty path between king and rook, and
+     * the king may not start on, pass through or land on an attacked square.
+     */
+    private boolean canCastle(Side s, boolean kingside) {
+        boolean[] rules = kingside
+            ? kingsideCastlingRules
+            : queensideCastlingRules;
+        if (!rules[s.ordinal()]) {
+            return false;
+        }
+
+        int king = Bitboards.square(s.getBackRow(), 4);
+        int rook = Bitboards.square(s.getBackRow(), kingside ? 7 : 0);
+        if (!(squares[king] instanceof King) || !(squares[rook] instanceof Rook)
+                || squares[rook].getSide() != s
+                || (Bitboards.between(king, rook) & occupied)
+                != Bitboards.EMPTY) {
+            return false;
+        }
+
+        int step = kingside ? 1 : -1;
+        for (int sq = king; sq != king + 3 * step; sq += step) {
+            if (isAttacked(sq, opponent(s), occupied, ~Bitboards.EMPTY)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isEnPassantTarget(int start, int dest) {
+        return enPassantPawnSquare >= 0
+                && Bitboards.col(dest) == Bitboards.col(enPassantPawnSquare)
+                && Bitboards.row(start) == Bitboards.row(enPassantPawnSquare);
+    }
+
+    /**
+     * Answers whether the moving side's king is left alone after the move,
+     * by masking the move into the occupancy instead of playing it.
+     */
+    private boolean isSafeForKing(int from, int to, int enPassantSquare,
+            Side s) {
+        long fromBit = Bitboards.bit(from);
+        long toBit = Bitboards.bit(to);
+        long captureBit = enPassantSquare >= 0
+            ? Bitboards.bit(enPassantSquare)
+            : toBit;
+
+        long occupiedAfter = (occupied & ~fromBit & ~captureBit) | toBit;
+        int kingSquare = squares[from] instanceof King ? to : kingSquare(s);
+        return !isAttacked(kingSquare, opponent(s), occupiedAfter,
+                ~captureBit);
+    }
+
+    private int kingSquare(Side s) {
+        return Bitboards.lowestSquare(
+                bitboards[Bitboards.index(s, ChessPiece.ChessPieceType.KING)]);
+    }
+
+    // survivors masks out an enemy piece that is about to be captured
+    private boolean isAttacked(int sq, Side by, long occ, long survivors) {
+        return (AttackTables.attackersOf(sq, by, occ, bitboards)
+                & survivors) != Bitboards.EMPTY;
+    }
+
+    private void placePiece(Piece p, int sq) {
+        long b = Bitboards.bit(sq);
+        bitboards[Bitboards.index(p)] |= b;
+        sideOccupancy[p.getSide().ordinal()] |= b;
+        occupied |= b;
+        squares[sq] = p;
+        hash ^= Zobrist.piece(p, sq);
+    }
+
+    private void removePiece(int sq) {
+        Piece p = squares[sq];
+        long b = ~Bitboards.bit(sq);
+        bitboards[Bitboards.index(p)] &= b;
+        sideOccupancy[p.getSide().ordinal()] &= b;
+        occupied &= b;
+        squares[sq] = null;
+        hash ^= Zobrist.piece(p, sq);
+    }
+
+    private void validateCastling(Piece p, Move m) {
+        Side side = p.getSide();
+        boolean fromBackRow = m.getStart().getRow() == side.getBackRow();
+        if (p instanceof King && m.getStart().getCol() == 4 && fromBackRow) {
+            disableKingside(side);
+            disableQueenside(side);
+        } else if (p instanceof Rook && m.getStart().getCol() == 0
+                && fromBackRow) {
+            disableQueenside(side);
+        } else if (p instanceof Rook && m.getStart().getCol() == 7
+                && fromBackRow) {
+            disableKingside(side);
+        }
+
+        // a rook captured in its corner takes its castling right with it
+        Side other = opponent(side);
+        Position dest = m.getDestination();
+        if (dest.getRow() == other.getBackRow() && dest.getCol() == 0) {
+            disableQueenside(other);
+        } else if (dest.getRow() == other.getBackRow()
+                && dest.getCol() == 7) {
+            disableKingside(other);
+        }
+    }
+
+    private void disableKingside(Side s) {
+        if (kingsideCastlingRules[s.ordinal()]) {
+            kingsideCastlingRules[s.ordinal()] = false;
+            hash ^= Zobrist.kingsideCastling(s);
+        }
+    }
+
+    private void disableQueenside(Side s) {
+        if (queensideCastlingRules[s.ordinal()]) {
+            queensideCastlingRules[s.ordinal()] = false;
+            hash ^= Zobrist.queensideCastling(s);
+        }
+    }
+
+    private static Side opponent(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+}
@@ -0,0 +1,111 @@
+package model.chess;
+
+import model.Piece;
+import model.Position;
+import model.Side;
+
+/**
+ * Square and bitboard helpers shared by the bitboard based board code.
+ * Attack sets live in AttackTables.
+ *
+ * Squares are numbered row * 8 + col, using the same rows and columns as
+ * Position, so square 0 is black's queen side corner and square 63 is
+ * white's king side corner. Bit n of a bitboard is set when square n is
+ * occupied.
+ *
+ * @author Joe
+ */
+public class Bitboards {
+
+    public static final long EMPTY = 0L;
+
+    // bitboards are indexed by side ordinal * PIECE_TYPES + type ordinal
+    public static final int PIECE_TYPES = 6;
+
+    private static final Position[] POSITIONS = new Position[64];
+
+    private static final int[] ROW_STEPS = {-1, -1, -1, 0, 1, 1, 1, 0};
+    private static final int[] COL_STEPS = {-1, 0, 1, 1, 1, 0, -1, -1};
+    private static final long[][] BETWEEN = new long[64][64];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            POSITIONS[sq] = new Position(row(sq), col(sq));
+
+            for (int dir = 0; dir < 8; dir++) {
+                int r = row(sq) + ROW_STEPS[dir];
+                int c = col(sq) + COL_STEPS[dir];
+                long between = EMPTY;
+                while (ChessUtils.posBoundsTest(r, c)) {
+                    BETWEEN[sq][square(r, c)] = between;
+                    between |= bit(r, c);
+                    r += ROW_STEPS[dir];
+                    c += COL_STEPS[dir];
+                }
+            }
+        }
+    }
+
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    public static int square(Position p) {
+        return square(p.getRow(), p.getCol());
+    }
+
+    public static int row(int square) {
+        return square >>> 3;
+    }
+
+    public static int col(int square) {
+        return square & 7;
+    }
+
+    /**
+     * Positions are immutable, so one shared instance per square is enough
+     *
+     * @param square a square index
+     * @return the Position for that square
+     */
+    public static Position position(int square) {
+        return POSITIONS[square];
+    }
+
+    public static long bit(int square) {
+        return 1L << square;
+    }
+
+    /**
+     * @return the bit for row, col or an empty bitboard if it is off the board
+     */
+    public static long bit(int row, int col) {
+        return ChessUtils.posBoundsTest(row, col)
+            ? bit(square(row, col))
+            : EMPTY;
+    }
+
+    public static int lowestSquare(long bitboard) {
+        return Long.numberOfTrailingZeros(bitboard);
+    }
+
+    public static int highestSquare(long bitboard) {
+        return 63 - Long.numberOfLeadingZeros(bitboard);
+    }
+
+    /**
+     * @return the squares strictly between a and b if they share a line,
+     * otherwise an empty bitboard
+     */
+    public static long between(int a, int b) {
+        return BETWEEN[a][b];
+    }
+
+    public static int index(Piece p) {
+        return index(p.getSide(), (ChessPiece.ChessPieceType) p.getType());
+    }
+
+    public static int index(Side s, ChessPiece.ChessPieceType type) {
+        return s.ordinal() * PIECE_TYPES + type.ordinal();
+    }
+}
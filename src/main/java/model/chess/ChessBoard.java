@@ -1,10 +1,10 @@
 package model.chess;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 import model.Board;
 import model.Move;
 import model.Piece;
@@ -19,16 +19,59 @@ import model.SideHasNoMovesException;
  */
 public class ChessBoard implements Board {
 
+    private static final ChessPiece.ChessPieceType[] PROMOTION_TYPES = {
+        ChessPiece.ChessPieceType.QUEEN, ChessPiece.ChessPieceType.KNIGHT,
+        ChessPiece.ChessPieceType.ROOK, ChessPiece.ChessPieceType.BISHOP};
+
+    private static final ChessPiece.ChessPieceType[] NON_PAWN_TYPES = {
+        ChessPiece.ChessPieceType.KNIGHT, ChessPiece.ChessPieceType.BISHOP,
+        ChessPiece.ChessPieceType.ROOK, ChessPiece.ChessPieceType.QUEEN,
+        ChessPiece.ChessPieceType.KING};
+
     private Map<Piece, Position> whitePositions;
     private Map<Piece, Position> blackPositions;
-    private Map<Side, Piece> kings;
     private Piece[][] board;
 
+    // the same placement as board, indexed by Bitboards.index
+    private long[] bitboards;
+    private long[] sideOccupancy;
+    private long occupied;
+
     private Map<Side, Boolean> kingsideCastlingRules;
     private Map<Side, Boolean> queensideCastlingRules;
 
-    private Move lastMove;
-    private Piece lastMovedPiece;
+    // square of a pawn that just advanced two rows, or -1
+    private int enPassantPawnSquare;
+
+    private Side sideToMove;
+    // Zobrist key of the position, see Zobrist
+    private long hash;
+    // Zobrist key of the pawns alone, for caching pawn structure
+    private long pawnHash;
+    // running PieceSquareTables sums and phase, kept up to date like hash
+    private int middlegameScore;
+    private int endgameScore;
+    private int phase;
+    // first layer of the NnueNetwork, if one is set, kept up to date the
+    // same way
+    private NnueAccumulator accumulator;
+
+    // plies since the last capture or pawn move, for the fifty move rule
+    private int halfmoveClock;
+    // starts at 1 and goes up after every black move
+    private int fullmoveNumber;
+
+    // pieces taken off the board by unmakeMove or setPosition, indexed like
+    // Bitboards.index, ready to be put back by promotions and FEN loading
+    private Piece[][] sparePieces;
+    private int[] spareCounts;
+
+    // scratch state for the legality checks
+    private MoveUndo previewUndo = new MoveUndo();
+    private MoveList generatedMoves = new MoveList();
+    // pin ray of each pinned piece, only valid for squares in the pinned
+    // bitboard of the current generateMoves call
+    private long[] pinRays = new long[64];
 
     //creates a chess board with all pieces in the right place
     public ChessBoard() {
@@ -39,11 +82,21 @@ public class ChessBoard implements Board {
         queensideCastlingRules.put(Side.WHITE, true);
         kingsideCastlingRules.put(Side.BLACK, true);
         queensideCastlingRules.put(Side.BLACK, true);
+        for (Side side : Side.values()) {
+            hash ^= Zobrist.kingsideCastling(side)
+                ^ Zobrist.queensideCastling(side);
+        }
+        sideToMove = Side.WHITE;
+        enPassantPawnSquare = -1;
+        fullmoveNumber = 1;
 
         whitePositions = new HashMap<>();
         blackPositions = new HashMap<>();
-        kings = new HashMap<>();
         board = new ChessPiece[8][8];
+        bitboards = new long[2 * Bitboards.PIECE_TYPES];
+        sideOccupancy = new long[2];
+        sparePieces = new Piece[2 * Bitboards.PIECE_TYPES][8];
+        spareCounts = new int[2 * Bitboards.PIECE_TYPES];
 
         for (Side side : Side.values()) {
             int frontRow = -1;
@@ -80,9 +133,8 @@ public class ChessBoard implements Board {
                     new Position(side == Side.BLACK ? 0 : 7, 3));
 
             // create King
-            ChessPiece king = new King(side);
-            kings.put(side, king);
-            placePiece(king, new Position(side == Side.BLACK ? 0 : 7, 4));
+            placePiece(new King(side),
+                    new Position(side == Side.BLACK ? 0 : 7, 4));
         }
     }
 
@@ -97,10 +149,65 @@ public class ChessBoard implements Board {
 
         whitePositions = new HashMap<>(b.whitePositions);
         blackPositions = new HashMap<>(b.blackPositions);
-        kings = new HashMap<>(b.kings);
+        bitboards = b.bitboards.clone();
+        sideOccupancy = b.sideOccupancy.clone();
+        occupied = b.occupied;
+        sparePieces = new Piece[2 * Bitboards.PIECE_TYPES][8];
+        spareCounts = new int[2 * Bitboards.PIECE_TYPES];
 
         kingsideCastlingRules = new HashMap<>(b.kingsideCastlingRules);
         queensideCastlingRules = new HashMap<>(b.queensideCastlingRules);
+
+        enPassantPawnSquare = b.enPassantPawnSquare;
+        sideToMove = b.sideToMove;
+        hash = b.hash;
+        pawnHash = b.pawnHash;
+        middlegameScore = b.middlegameScore;
+        endgameScore = b.endgameScore;
+        phase = b.phase;
+        accumulator = b.accumulator == null ? null : b.accumulator.copy();
+        halfmoveClock = b.halfmoveClock;
+        fullmoveNumber = b.fullmoveNumber;
+    }
+
+    /**
+     * Creates a board in the position described by a FEN record.
+     *
+     * @param fen the position, see Fen, and nothing more
+     * @throws IllegalArgumentException if fen is not a valid position or
+     * has anything after it
+     */
+    public ChessBoard(String fen) {
+        this();
+        setPosition(fen);
+    }
+
+    /**
+     * @return an independent board in the same position, for searching on
+     * another thread
+     */
+    public ChessBoard copy() {
+        return new ChessBoard(this);
+    }
+
+    /**
+     * Replaces the whole position with the one described by a FEN record,
+     * reusing this board's pieces where it can. EPD records, with
+     * operations after the FEN fields, go through EpdReader instead.
+     *
+     * @param fen the position, see Fen, and nothing more
+     * @throws IllegalArgumentException if fen is not a valid position or
+     * has anything after it
+     */
+    public void setPosition(CharSequence fen) {
+        Fen.parse(this, fen);
+    }
+
+    /**
+     * @return this position as a FEN record
+     */
+    public String toFen() {
+        return Fen.write(this);
     }
 
     @Override
@@ -120,6 +227,11 @@ public class ChessBoard implements Board {
                     ((PawnCaptureMove) m).getEnPassantCapturePosition());
         }
 
+        // the rook half of castling arrives after the turn has passed
+        if (p.getSide() == sideToMove) {
+            updateMoveCounters(p, destPiece != null);
+        }
+
         //kill a piece
         if (destPiece != null) {
             removePiece(destPiece);
@@ -130,53 +242,238 @@ public class ChessBoard implements Board {
         placePiece(p, destPos);
 
         // keep short history for en passant
-        lastMove = m;
-        lastMovedPiece = p;
+        setEnPassantPawnSquare(p instanceof Pawn
+                && Math.abs(m.getStart().getRow() - destPos.getRow()) == 2
+            ? Bitboards.square(destPos)
+            : -1);
+        setSideToMove(opponent(p.getSide()));
     }
 
     @Override
     public Map<Piece, Set<Move>> generateAllMovesForSide(Side s)
         throws SideHasNoMovesException {
 
-        boolean sideInCheck = isInCheck(s);
+        generateMoves(s, generatedMoves);
+
+        if (generatedMoves.isEmpty()) {
+            throw new SideHasNoMovesException(s.toString() + " has no moves.");
+        }
+
+        return toMoveMap(s, generatedMoves);
+    }
+
+    /**
+     * Fills moves with every legal move for side s, replacing its contents.
+     * Checkers and pinned pieces are worked out once up front, so moves are
+     * emitted already legal instead of being played and tested one by one.
+     * Nothing is allocated, so search code can reuse one list per ply.
+     *
+     * @param s the side to generate moves for
+     * @param moves receives PackedMove ints
+     */
+    public void generateMoves(Side s, MoveList moves) {
+        generateLegalMoves(s, moves, true);
+    }
+
+    /**
+     * Fills moves with the legal captures and promotions for side s, the
+     * moves a quiescence search looks at, replacing its contents.
+     *
+     * @param s the side to generate moves for
+     * @param moves receives PackedMove ints
+     */
+    public void generateCaptures(Side s, MoveList moves) {
+        generateLegalMoves(s, moves, false);
+    }
+
+    private void generateLegalMoves(Side s, MoveList moves, boolean quiets) {
+        moves.clear();
+
+        Side them = opponent(s);
+        long own = sideOccupancy[s.ordinal()];
+        long enemy = sideOccupancy[them.ordinal()];
+        long targetMask = quiets ? ~own : enemy;
+        int king = Bitboards.lowestSquare(
+                bitboards[Bitboards.index(s, ChessPiece.ChessPieceType.KING)]);
+
+        // the king must not shield its destination from a slider
+        long withoutKing = occupied ^ Bitboards.bit(king);
+        long kingTargets = AttackTables.kingAttacks(king) & targetMask;
+        while (kingTargets != Bitboards.EMPTY) {
+            int to = Bitboards.lowestSquare(kingTargets);
+            kingTargets &= kingTargets - 1;
+            if (AttackTables.attackersOf(to, them, withoutKing, bitboards)
+                    == Bitboards.EMPTY) {
+                moves.add(PackedMove.encode(king, to,
+                        (enemy & Bitboards.bit(to)) != Bitboards.EMPTY
+                            ? PackedMove.CAPTURE
+                            : 0));
+            }
+        }
+
+        long checkers = AttackTables.attackersOf(king, them, occupied,
+                bitboards);
+        if (Long.bitCount(checkers) > 1) {
+            // only the king can get out of a double check
+            return;
+        }
+
+        // squares a piece other than the king may move to
+        long checkMask = ~Bitboards.EMPTY;
+        if (checkers != Bitboards.EMPTY) {
+            checkMask = checkers
+                | Bitboards.between(king, Bitboards.lowestSquare(checkers));
+        }
+        long pinned = findPinnedPieces(s, king);
+
+        addPawnMoves(s, enemy, checkMask, pinned, king, quiets, moves);
+
+        for (ChessPiece.ChessPieceType type : NON_PAWN_TYPES) {
+            if (type == ChessPiece.ChessPieceType.KING) {
+                continue;
+            }
+            long pieces = bitboards[Bitboards.index(s, type)];
+            while (pieces != Bitboards.EMPTY) {
+                int from = Bitboards.lowestSquare(pieces);
+                pieces &= pieces - 1;
+
+                long targets = AttackTables.attacks(type, s, from, occupied)
+                    & targetMask & checkMask;
+                if ((pinned & Bitboards.bit(from)) != Bitboards.EMPTY) {
+                    targets &= pinRays[from];
+                }
+                addTargets(from, targets, enemy, moves);
+            }
+        }
+
+        if (quiets && checkers == Bitboards.EMPTY) {
+            addCastlingMoves(s, king, moves);
+        }
+    }
+
+    /**
+     * Appends every move for side s that follows the pieces' movement rules,
+     * including ones that would leave s's own king in check.
+     *
+     * @param s the side to generate moves for
+     * @param moves receives PackedMove ints
+     */
+    public void generatePseudoLegalMoves(Side s, MoveList moves) {
+        long own = sideOccupancy[s.ordinal()];
+        long enemy = sideOccupancy[opponent(s).ordinal()];
+
+        addPawnMoves(s, enemy, ~Bitboards.EMPTY, Bitboards.EMPTY, -1, true,
+                moves);
+
+        for (ChessPiece.ChessPieceType type : NON_PAWN_TYPES) {
+            long pieces = bitboards[Bitboards.index(s, type)];
+            while (pieces != Bitboards.EMPTY) {
+                int from = Bitboards.lowestSquare(pieces);
+                pieces &= pieces - 1;
+                addTargets(from,
+                        AttackTables.attacks(type, s, from, occupied) & ~own,
+                        enemy, moves);
+            }
+        }
+
+        addCastlingMoves(s, Bitboards.square(s.getBackRow(), 4), moves);
+    }
+
+    /**
+     * Builds the piece to move set map of generateAllMovesForSide out of a
+     * list of packed moves. Every piece of side s gets an entry, even if it
+     * has no moves.
+     *
+     * @param s the side the moves belong to
+     * @param moves PackedMove ints for pieces of side s
+     * @return a map of piece to sets of moves for that piece
+     */
+    public Map<Piece, Set<Move>> toMoveMap(Side s, MoveList moves) {
         Map<Piece, Set<Move>> allMoves = new HashMap<>();
         Map<Piece, Position> piecePositions = (s == Side.WHITE)
             ? whitePositions
             : blackPositions;
-        boolean sideHasMoves = false;
-
         for (Piece p : piecePositions.keySet()) {
-            Set<Move> moves = p.generateMoves(piecePositions.get(p));
-            if (p instanceof King) {
-                if (!sideInCheck && queensideCastlingRules.get(s)) {
-                    Position start = new Position(s.getBackRow(), 4);
-                    Position dest = new Position(s.getBackRow(), 2);
-                    moves.add(new CastlingMove(start, dest,
-                            CastlingMove.CastlingType.QUEEN_SIDE));
-                }
-                if (!sideInCheck && kingsideCastlingRules.get(s)) {
-                    Position start = new Position(s.getBackRow(), 4);
-                    Position dest = new Position(s.getBackRow(), 6);
-                    moves.add(new CastlingMove(start, dest,
-                            CastlingMove.CastlingType.KING_SIDE));
-                }
-            }
-            Set<Move> filtered = moves
-                .stream()
-                .filter(m -> pieceCanMove(m, s))
-                .collect(Collectors.toCollection(HashSet<Move>::new));
+            allMoves.put(p, new HashSet<>());
+        }
 
-            if (!filtered.isEmpty()) {
-                sideHasMoves = true;
+        for (int i = 0; i < moves.size(); i++) {
+            int m = moves.get(i);
+            Move move = toMove(m);
+            if (move instanceof PromotionMove) {
+                // the controller asks which piece to promote to
+                ((PromotionMove) move).setPromotingTo(null);
             }
-            allMoves.put(p, filtered);
+            allMoves.get(getPieceAt(PackedMove.from(m))).add(move);
         }
+        return allMoves;
+    }
 
-        if (!sideHasMoves) {
-            throw new SideHasNoMovesException(s.toString() + " has no moves.");
+    /**
+     * Converts a packed move for this position into the Move subclass the
+     * pieces themselves would generate.
+     *
+     * @param move a PackedMove int
+     * @return the equivalent Move
+     */
+    public Move toMove(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Position start = Bitboards.position(from);
+        Position dest = Bitboards.position(to);
+        Piece mover = getPieceAt(from);
+
+        if (PackedMove.isCastling(move)) {
+            return new CastlingMove(start, dest, to > from
+                ? CastlingMove.CastlingType.KING_SIDE
+                : CastlingMove.CastlingType.QUEEN_SIDE);
+        } else if (mover instanceof Pawn) {
+            boolean capture = PackedMove.isCapture(move);
+            if (PackedMove.isPromotion(move)) {
+                PromotionMove pm = new PromotionMove(start, dest, false,
+                        !capture, capture);
+                pm.setPromotingTo(PackedMove.promotion(move));
+                return pm;
+            } else if (capture) {
+                PawnCaptureMove pcm = new PawnCaptureMove(start, dest, false,
+                        false, true);
+                if (PackedMove.isEnPassant(move)) {
+                    pcm.setIsEnPassant(true);
+                    pcm.setEnPassantCapturePosition(Bitboards.position(
+                            Bitboards.square(Bitboards.row(from),
+                                    Bitboards.col(to))));
+                }
+                return pcm;
+            }
+            return new Move(start, dest, false, true, false);
         }
+        return new Move(start, dest, mover instanceof Knight);
+    }
 
-        return allMoves;
+    /**
+     * Converts a Move for this position into a packed move. A PromotionMove
+     * without a type keeps the pawn on the last row, like movePiece does.
+     *
+     * @param m a move for a piece on this board
+     * @return the equivalent PackedMove int
+     */
+    public int toPackedMove(Move m) {
+        int from = Bitboards.square(m.getStart());
+        int to = Bitboards.square(m.getDestination());
+        int flags = getPieceAt(to) != null ? PackedMove.CAPTURE : 0;
+
+        if (m instanceof CastlingMove) {
+            flags |= PackedMove.CASTLING;
+        } else if (m instanceof PawnCaptureMove
+                && ((PawnCaptureMove) m).isEnPassant()) {
+            flags |= PackedMove.CAPTURE | PackedMove.EN_PASSANT;
+        } else if (m instanceof PromotionMove
+                && ((PromotionMove) m).getPromotingTo() != null) {
+            return PackedMove.encode(from, to, flags,
+                    (ChessPiece.ChessPieceType)
+                    ((PromotionMove) m).getPromotingTo());
+        }
+        return PackedMove.encode(from, to, flags);
     }
 
     @Override
@@ -187,26 +484,26 @@ public class ChessBoard implements Board {
         Piece pieceAtDest = getPieceAt(dest);
         Piece mover = getPieceAt(start);
 
-        boolean positionAvailable = pieceAtDest == null;
+        if (m instanceof CastlingMove) {
+            return mover instanceof King && canCastle(movingSide,
+                    ((CastlingMove) m).getCastlingType()
+                    == CastlingMove.CastlingType.KING_SIDE);
+        }
 
-        boolean isEnPassantCapture = false;
+        boolean positionAvailable = pieceAtDest == null;
 
-        if (lastMovedPiece != null && lastMove != null) {
-            isEnPassantCapture = mover instanceof Pawn
-                    && lastMovedPiece instanceof Pawn
-                    && m instanceof PawnCaptureMove
-                    && Math.abs(lastMove.getStart().getRow()
-                    - lastMove.getDestination().getRow()) == 2
-                    && m.getDestination().getCol()
-                    == lastMove.getDestination().getCol()
-                    && lastMove.getDestination().getRow()
-                    == m.getStart().getRow();
-        }
+        boolean isEnPassantCapture = mover instanceof Pawn
+                && m instanceof PawnCaptureMove
+                && enPassantPawnSquare >= 0
+                && m.getDestination().getCol()
+                == Bitboards.col(enPassantPawnSquare)
+                && m.getStart().getRow() == Bitboards.row(enPassantPawnSquare);
 
         if (isEnPassantCapture) {
             PawnCaptureMove pcm = (PawnCaptureMove) m;
             pcm.setIsEnPassant(true);
-            pcm.setEnPassantCapturePosition(lastMove.getDestination());
+            pcm.setEnPassantCapturePosition(
+                    Bitboards.position(enPassantPawnSquare));
         }
 
         boolean canCapture = (!positionAvailable
@@ -225,48 +522,167 @@ public class ChessBoard implements Board {
             return false;
         }
 
-        if (!m.isJump()) {
-            //walk towards destination and check for pieces
-            //along the way
-            int xi = start.getCol(), xf = dest.getCol();
-            int yi = start.getRow(), yf = dest.getRow();
+        if (!m.isJump() && (Bitboards.between(Bitboards.square(start),
+                Bitboards.square(dest)) & occupied) != Bitboards.EMPTY) {
+            return false;
+        }
 
-            int dx = 0, dy = 0;
-            if (Math.abs(xf - xi) != 0) {
-                dx = (xf - xi) / Math.abs(xf - xi);
-            }
-            if (Math.abs(yf - yi) != 0) {
-                dy = (yf - yi) / Math.abs(yf - yi);
-            }
+        if (positionAvailable || canCapture) {
+            makeMove(m, previewUndo);
+            boolean moveCausesCheck = isInCheck(movingSide);
+            unmakeMove(previewUndo);
+            return !moveCausesCheck;
+        } else {
+            return false;
+        }
+    }
 
-            for (int x = xi + dx, y = yi + dy;
-                    x != xf || y != yf;
-                    x += dx, y += dy) {
-                if (getPieceAt(y, x) != null) {
-                    return false;
-                }
-            }
+    /**
+     * Plays a move in place, including the rook half of castling, en passant
+     * captures and promotion when the PromotionMove has a type set. The
+     * state needed to take the move back is written into undo, which can be
+     * reused once the move has been unmade. This method assumes the move is
+     * legal.
+     *
+     * @param m the move to play
+     * @param undo record that receives the state to restore
+     */
+    public void makeMove(Move m, MoveUndo undo) {
+        makeMove(toPackedMove(m), undo);
+    }
+
+    /**
+     * Plays a packed move in place, see makeMove(Move, MoveUndo).
+     *
+     * @param move the PackedMove int to play
+     * @param undo record that receives the state to restore
+     */
+    public void makeMove(int move, MoveUndo undo) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Piece mover = getPieceAt(from);
+        Side side = mover.getSide();
+
+        undo.move = move;
+        undo.mover = mover;
+        undo.enPassantPawnSquare = enPassantPawnSquare;
+        undo.whiteKingside = kingsideCastlingRules.get(Side.WHITE);
+        undo.whiteQueenside = queensideCastlingRules.get(Side.WHITE);
+        undo.blackKingside = kingsideCastlingRules.get(Side.BLACK);
+        undo.blackQueenside = queensideCastlingRules.get(Side.BLACK);
+        undo.sideToMove = sideToMove;
+        undo.hash = hash;
+        undo.halfmoveClock = halfmoveClock;
+        undo.fullmoveNumber = fullmoveNumber;
+
+        updateCastlingRights(mover, from, to);
+        updateMoveCounters(mover, PackedMove.isCapture(move));
+
+        int captureSquare = PackedMove.isEnPassant(move)
+            ? Bitboards.square(Bitboards.row(from), Bitboards.col(to))
+            : to;
+        undo.captured = getPieceAt(captureSquare);
+        undo.captureSquare = captureSquare;
+        if (undo.captured != null) {
+            removePiece(undo.captured, captureSquare);
         }
 
-        if (positionAvailable || canCapture) {
-            ChessBoard preview = new ChessBoard(this);
-            Position destPos = m.getDestination();
+        relocatePiece(mover, from, to);
 
-            Piece destPiece = getPieceAt(destPos.getRow(), destPos.getCol());
+        undo.promoted = null;
+        if (PackedMove.isPromotion(move)) {
+            undo.promoted = takeSparePiece(PackedMove.promotion(move), side);
+            removePiece(mover, to);
+            placePiece(undo.promoted, to);
+        }
 
-            //kill a piece
-            if (destPiece != null) {
-                preview.removePiece(destPiece);
-            }
-            //move p
-            preview.removePiece(mover);
-            preview.placePiece(mover, destPos);
+        if (PackedMove.isCastling(move)) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            relocatePiece(getPieceAt(rookFrom), rookFrom, rookTo);
+        }
 
-            boolean moveCausesCheck = preview.isInCheck(movingSide);
-            return !moveCausesCheck;
+        setEnPassantPawnSquare(mover instanceof Pawn
+                && Math.abs(Bitboards.row(from) - Bitboards.row(to)) == 2
+            ? to
+            : -1);
+        setSideToMove(opponent(side));
+    }
+
+    /**
+     * Takes back the move recorded in undo by makeMove. Moves have to be
+     * unmade in the reverse order they were made.
+     *
+     * @param undo the record filled in by makeMove
+     */
+    public void unmakeMove(MoveUndo undo) {
+        int from = PackedMove.from(undo.move);
+        int to = PackedMove.to(undo.move);
+
+        if (PackedMove.isCastling(undo.move)) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            relocatePiece(getPieceAt(rookTo), rookTo, rookFrom);
+        }
+
+        if (undo.promoted != null) {
+            removePiece(undo.promoted, to);
+            placePiece(undo.mover, from);
+            addSparePiece(undo.promoted);
         } else {
-            return false;
+            relocatePiece(undo.mover, to, from);
+        }
+
+        if (undo.captured != null) {
+            placePiece(undo.captured, undo.captureSquare);
         }
+
+        kingsideCastlingRules.put(Side.WHITE, undo.whiteKingside);
+        queensideCastlingRules.put(Side.WHITE, undo.whiteQueenside);
+        kingsideCastlingRules.put(Side.BLACK, undo.blackKingside);
+        queensideCastlingRules.put(Side.BLACK, undo.blackQueenside);
+
+        enPassantPawnSquare = undo.enPassantPawnSquare;
+        sideToMove = undo.sideToMove;
+        hash = undo.hash;
+        halfmoveClock = undo.halfmoveClock;
+        fullmoveNumber = undo.fullmoveNumber;
+    }
+
+    /**
+     * Passes the turn without moving, for null move pruning in a search.
+     * Any en passant capture is lost, as after a real move. Not legal in a
+     * game, and the side to move must not be in check.
+     *
+     * @param undo record that receives the state to restore
+     */
+    public void makeNullMove(MoveUndo undo) {
+        undo.move = PackedMove.NONE;
+        undo.enPassantPawnSquare = enPassantPawnSquare;
+        undo.sideToMove = sideToMove;
+        undo.hash = hash;
+        undo.halfmoveClock = halfmoveClock;
+        undo.fullmoveNumber = fullmoveNumber;
+
+        halfmoveClock++;
+        if (sideToMove == Side.BLACK) {
+            fullmoveNumber++;
+        }
+        setEnPassantPawnSquare(-1);
+        setSideToMove(opponent(sideToMove));
+    }
+
+    /**
+     * Takes back a makeNullMove.
+     *
+     * @param undo the record filled in by makeNullMove
+     */
+    public void unmakeNullMove(MoveUndo undo) {
+        enPassantPawnSquare = undo.enPassantPawnSquare;
+        sideToMove = undo.sideToMove;
+        hash = undo.hash;
+        halfmoveClock = undo.halfmoveClock;
+        fullmoveNumber = undo.fullmoveNumber;
     }
 
     @Override
@@ -277,73 +693,239 @@ public class ChessBoard implements Board {
         return all;
     }
 
+    @Override
     public boolean isInCheck(Side s) {
-        Piece k = kings.get(s);
-        Map<Piece, Position> piecePositions;
+        int kingSquare = Bitboards.lowestSquare(
+                bitboards[Bitboards.index(s, ChessPiece.ChessPieceType.KING)]);
+        return isAttacked(kingSquare, opponent(s));
+    }
 
-        if (s.equals(Side.BLACK)) {
-            piecePositions = blackPositions;
-        } else {
-            piecePositions = whitePositions;
-        }
-
-        Position kingPosition = piecePositions.get(k);
-
-        //throws NPE when king is killed
-        int row = kingPosition.getRow();
-        int col = kingPosition.getCol();
-
-        // check for attacking knights because they're weird and special
-        for (int dx = -2; dx <= 2; dx++) {
-            for (int dy = -2; dy <= 2; dy++) {
-                if (dx != dy && dx != 0 && dy != 0 && dx + dy != 0) {
-                    if (ChessUtils.posBoundsTest(row + dy, col + dx)) {
-                        Piece p = getPieceAt(row + dy, col + dx);
-                        if (p != null
-                                && !p.getSide().equals(s)
-                                && p.getType().equals(
-                                    ChessPiece.ChessPieceType.KNIGHT)) {
-                            return true;
-                        }
-                    }
-                }
+    /**
+     * @param square a square, see Bitboards
+     * @param by the attacking side
+     * @return whether any piece of side by attacks square
+     */
+    public boolean isAttacked(int square, Side by) {
+        return AttackTables.attackersOf(square, by, occupied, bitboards)
+            != Bitboards.EMPTY;
+    }
+
+    /**
+     * @param square a square, see Bitboards
+     * @param by the attacking side
+     * @param occupancy the squares sliders are blocked by, normally
+     * getOccupied() with captured pieces taken off
+     * @return the pieces of side by that attack square, restricted to
+     * occupancy
+     */
+    public long attackersOf(int square, Side by, long occupancy) {
+        return AttackTables.attackersOf(square, by, occupancy, bitboards)
+            & occupancy;
+    }
+
+    /**
+     * @return every occupied square
+     */
+    public long getOccupied() {
+        return occupied;
+    }
+
+    /**
+     * The side to move is the opponent of whoever moved last, White before
+     * any move has been played.
+     *
+     * @return the side to move
+     */
+    public Side getSideToMove() {
+        return sideToMove;
+    }
+
+    @Override
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * @return the Zobrist key of the pawns alone, which changes only when a
+     * pawn moves, is captured or promotes
+     */
+    public long getPawnHash() {
+        return pawnHash;
+    }
+
+    /**
+     * @return the sum of the middlegame PieceSquareTables values of every
+     * piece, from white's point of view
+     */
+    public int getMiddlegameScore() {
+        return middlegameScore;
+    }
+
+    /**
+     * @return the sum of the endgame PieceSquareTables values of every
+     * piece, from white's point of view
+     */
+    public int getEndgameScore() {
+        return endgameScore;
+    }
+
+    /**
+     * @return the game phase of the material on the board, up to
+     * PieceSquareTables.MAX_PHASE with every piece there, more after
+     * promotions
+     */
+    public int getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return the network whose first layer this board keeps up to date,
+     * or null
+     */
+    public NnueNetwork getNetwork() {
+        return accumulator == null ? null : accumulator.getNetwork();
+    }
+
+    /**
+     * Starts or stops keeping a network's first layer up to date as pieces
+     * move, which getNetworkScore needs.
+     *
+     * @param network the network, or null for none
+     */
+    public void setNetwork(NnueNetwork network) {
+        if (network == getNetwork()) {
+            return;
+        }
+        accumulator = null;
+        if (network == null) {
+            return;
+        }
+        accumulator = new NnueAccumulator(network);
+        for (int index = 0; index < bitboards.length; index++) {
+            long pieces = bitboards[index];
+            while (pieces != Bitboards.EMPTY) {
+                accumulator.toggle(index, Bitboards.lowestSquare(pieces),
+                        true);
+                pieces &= pieces - 1;
             }
         }
+    }
+
+    /**
+     * @return the network's evaluation for the side to move, in centipawns
+     * @throws IllegalStateException if no network is set
+     */
+    public int getNetworkScore() {
+        if (accumulator == null) {
+            throw new IllegalStateException("no network is set");
+        }
+        return accumulator.evaluate(sideToMove);
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
 
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
 
-        // check for all the other linear pieces
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dy = -1; dy <= 1; dy++) {
-                int attackCol = col + dx;
-                int attackRow = row + dy;
-                boolean kingDefended = false;
-                while (!kingDefended
-                        && (dx != 0 || dy != 0)
-                        && ChessUtils.posBoundsTest(attackRow, attackCol)) {
-                    Piece attacker = getPieceAt(attackRow, attackCol);
-                    if (attacker != null && !attacker.getSide().equals(s)) {
-                        Position p = new Position(attackRow, attackCol);
-                        if (attacker.generateMoves(p).stream()
-                                .filter(m -> !m.cannotCapture())
-                                .map(m -> m.getDestination())
-                                .collect(Collectors
-                                    .toCollection(HashSet<Position>::new))
-                                .contains(kingPosition)) {
-                            return true;
-                        } else {
-                            kingDefended = true;
-                        }
-                    } else if (attacker != null
-                            && attacker.getSide().equals(s)) {
-                        kingDefended = true;
-                    }
-                    attackCol = attackCol + dx;
-                    attackRow = attackRow + dy;
-                }
-            }
+    /**
+     * @param s a side
+     * @param kingside which castling right
+     * @return whether s may still castle on that side, as far as king and
+     * rook moves go
+     */
+    public boolean hasCastlingRight(Side s, boolean kingside) {
+        return kingside
+            ? kingsideCastlingRules.get(s)
+            : queensideCastlingRules.get(s);
+    }
+
+    /**
+     * @param s a side
+     * @param type a piece type
+     * @return the squares holding s's pieces of that type, see Bitboards
+     */
+    public long getBitboard(Side s, ChessPiece.ChessPieceType type) {
+        return bitboards[Bitboards.index(s, type)];
+    }
+
+    /**
+     * @return the square of the pawn that can be taken en passant, or -1
+     */
+    public int getEnPassantPawnSquare() {
+        return enPassantPawnSquare;
+    }
+
+    /**
+     * Empties the board for Fen to fill in again: no pieces, no castling
+     * rights, no en passant pawn and white to move.
+     */
+    void clear() {
+        long pieces = occupied;
+        while (pieces != Bitboards.EMPTY) {
+            int square = Bitboards.lowestSquare(pieces);
+            pieces &= pieces - 1;
+            addSparePiece(getPieceAt(square));
+        }
+        for (Piece[] row : board) {
+            Arrays.fill(row, null);
+        }
+        whitePositions.clear();
+        blackPositions.clear();
+        Arrays.fill(bitboards, Bitboards.EMPTY);
+        Arrays.fill(sideOccupancy, Bitboards.EMPTY);
+        occupied = Bitboards.EMPTY;
+
+        for (Side side : Side.values()) {
+            kingsideCastlingRules.put(side, false);
+            queensideCastlingRules.put(side, false);
         }
+        enPassantPawnSquare = -1;
+        sideToMove = Side.WHITE;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        hash = 0L;
+        pawnHash = 0L;
+        middlegameScore = 0;
+        endgameScore = 0;
+        phase = 0;
+        if (accumulator != null) {
+            accumulator.reset();
+        }
+    }
 
-        return false;
+    /**
+     * Puts a piece of the given type on an empty square, for Fen
+     */
+    void addPiece(ChessPiece.ChessPieceType type, Side side, int square) {
+        placePiece(takeSparePiece(type, side), square);
+    }
+
+    /**
+     * Sets the rest of the position state after clear, for Fen
+     *
+     * @param castling the rights held, as Fen castling bits
+     */
+    void setState(Side toMove, int castling, int enPassantSquare,
+            int halfmoves, int fullmoves) {
+        if ((castling & Fen.WHITE_KINGSIDE) != 0) {
+            enableKingside(Side.WHITE);
+        }
+        if ((castling & Fen.WHITE_QUEENSIDE) != 0) {
+            enableQueenside(Side.WHITE);
+        }
+        if ((castling & Fen.BLACK_KINGSIDE) != 0) {
+            enableKingside(Side.BLACK);
+        }
+        if ((castling & Fen.BLACK_QUEENSIDE) != 0) {
+            enableQueenside(Side.BLACK);
+        }
+        setEnPassantPawnSquare(enPassantSquare);
+        setSideToMove(toMove);
+        halfmoveClock = halfmoves;
+        fullmoveNumber = fullmoves;
     }
 
     @Override
@@ -351,6 +933,14 @@ public class ChessBoard implements Board {
         return board[p.getRow()][p.getCol()];
     }
 
+    /**
+     * @param square a square, see Bitboards
+     * @return the piece on that square or null
+     */
+    public Piece getPieceAt(int square) {
+        return board[Bitboards.row(square)][Bitboards.col(square)];
+    }
+
     @Override
     public void replacePieceAt(Position pos, Piece newPiece) {
         Piece old = getPieceAt(pos);
@@ -362,38 +952,378 @@ public class ChessBoard implements Board {
         return board[row][col];
     }
 
+    /**
+     * Pieces of side s that shield their king from an enemy slider. For
+     * each one, pinRays holds the squares it can move to without exposing
+     * the king: the line up to and including the pinning piece.
+     */
+    private long findPinnedPieces(Side s, int king) {
+        Side them = opponent(s);
+        long enemy = sideOccupancy[them.ordinal()];
+        long queens = bitboards[Bitboards.index(them,
+                ChessPiece.ChessPieceType.QUEEN)];
+        long snipers = (AttackTables.rookAttacks(king, enemy)
+                & (bitboards[Bitboards.index(them,
+                        ChessPiece.ChessPieceType.ROOK)] | queens))
+            | (AttackTables.bishopAttacks(king, enemy)
+                & (bitboards[Bitboards.index(them,
+                        ChessPiece.ChessPieceType.BISHOP)] | queens));
+
+        long pinned = Bitboards.EMPTY;
+        while (snipers != Bitboards.EMPTY) {
+            int sniper = Bitboards.lowestSquare(snipers);
+            snipers &= snipers - 1;
+            long between = Bitboards.between(king, sniper);
+            long blockers = between & occupied;
+            if (Long.bitCount(blockers) == 1
+                    && (blockers & sideOccupancy[s.ordinal()])
+                    != Bitboards.EMPTY) {
+                pinned |= blockers;
+                pinRays[Bitboards.lowestSquare(blockers)] =
+                    between | Bitboards.bit(sniper);
+            }
+        }
+        return pinned;
+    }
+
+    /**
+     * Pawn moves for side s onto squares in checkMask, with pinned pawns
+     * kept on their pin ray. A king square of -1 means pseudo-legal moves
+     * are wanted, so en passant is not checked for discovered checks.
+     * Without quiets only captures and promotions are added.
+     */
+    private void addPawnMoves(Side s, long enemy, long checkMask, long pinned,
+            int king, boolean quiets, MoveList moves) {
+        int forward = s == Side.WHITE ? -8 : 8;
+        int promotionRow = s == Side.WHITE ? 0 : 7;
+
+        long pawns = bitboards[Bitboards.index(s,
+                ChessPiece.ChessPieceType.PAWN)];
+        while (pawns != Bitboards.EMPTY) {
+            int from = Bitboards.lowestSquare(pawns);
+            pawns &= pawns - 1;
+
+            long allowed = checkMask;
+            if ((pinned & Bitboards.bit(from)) != Bitboards.EMPTY) {
+                allowed &= pinRays[from];
+            }
+
+            int push = from + forward;
+            if ((occupied & Bitboards.bit(push)) == Bitboards.EMPTY) {
+                if ((allowed & Bitboards.bit(push)) != Bitboards.EMPTY
+                        && (quiets || Bitboards.row(push) == promotionRow)) {
+                    addPawnMove(from, push, 0, promotionRow, moves);
+                }
+                int doublePush = push + forward;
+                if (quiets && Bitboards.row(from) == s.getFrontRow()
+                        && ((occupied | ~allowed) & Bitboards.bit(doublePush))
+                        == Bitboards.EMPTY) {
+                    moves.add(PackedMove.encode(from, doublePush, 0));
+                }
+            }
+
+            long captures = AttackTables.pawnAttacks(s, from) & enemy
+                & allowed;
+            while (captures != Bitboards.EMPTY) {
+                int to = Bitboards.lowestSquare(captures);
+                captures &= captures - 1;
+                addPawnMove(from, to, PackedMove.CAPTURE, promotionRow, moves);
+            }
+
+            if (enPassantPawnSquare >= 0
+                    && Bitboards.row(from) == Bitboards.row(enPassantPawnSquare)
+                    && Math.abs(Bitboards.col(from)
+                        - Bitboards.col(enPassantPawnSquare)) == 1
+                    && (king < 0 || enPassantIsLegal(s, from,
+                            enPassantPawnSquare + forward, king, checkMask))) {
+                moves.add(PackedMove.encode(from,
+                        enPassantPawnSquare + forward,
+                        PackedMove.CAPTURE | PackedMove.EN_PASSANT));
+            }
+        }
+    }
+
+    /**
+     * En passant takes two pawns off one row at once, so besides the usual
+     * check and pin rules it can open a rank for an enemy rook or queen.
+     * The capture is legal if it deals with any check and no enemy slider
+     * sees the king once both pawns have moved.
+     */
+    private boolean enPassantIsLegal(Side s, int from, int to, int king,
+            long checkMask) {
+        long captured = Bitboards.bit(enPassantPawnSquare);
+        if ((checkMask & (Bitboards.bit(to) | captured)) == Bitboards.EMPTY) {
+            return false;
+        }
+
+        Side them = opponent(s);
+        long after = (occupied ^ Bitboards.bit(from) ^ captured)
+            | Bitboards.bit(to);
+        long queens = bitboards[Bitboards.index(them,
+                ChessPiece.ChessPieceType.QUEEN)];
+        return (AttackTables.rookAttacks(king, after)
+                & (bitboards[Bitboards.index(them,
+                        ChessPiece.ChessPieceType.ROOK)] | queens))
+                == Bitboards.EMPTY
+            && (AttackTables.bishopAttacks(king, after)
+                & (bitboards[Bitboards.index(them,
+                        ChessPiece.ChessPieceType.BISHOP)] | queens))
+                == Bitboards.EMPTY;
+    }
+
+    private static void addTargets(int from, long targets, long enemy,
+            MoveList moves) {
+        while (targets != Bitboards.EMPTY) {
+            int to = Bitboards.lowestSquare(targets);
+            targets &= targets - 1;
+            moves.add(PackedMove.encode(from, to,
+                    (enemy & Bitboards.bit(to)) != Bitboards.EMPTY
+                        ? PackedMove.CAPTURE
+                        : 0));
+        }
+    }
+
+    private void addCastlingMoves(Side s, int king, MoveList moves) {
+        if (canCastle(s, true)) {
+            moves.add(PackedMove.encode(king, king + 2, PackedMove.CASTLING));
+        }
+        if (canCastle(s, false)) {
+            moves.add(PackedMove.encode(king, king - 2, PackedMove.CASTLING));
+        }
+    }
+
+    private static void addPawnMove(int from, int to, int flags,
+            int promotionRow, MoveList moves) {
+        if (Bitboards.row(to) == promotionRow) {
+            for (ChessPiece.ChessPieceType type : PROMOTION_TYPES) {
+                moves.add(PackedMove.encode(from, to, flags, type));
+            }
+        } else {
+            moves.add(PackedMove.encode(from, to, flags));
+        }
+    }
+
+    /**
+     * Castling needs the right, an empty path between king and rook, and
+     * the king may not start on, pass through or land on an attacked square.
+     */
+    private boolean canCastle(Side s, boolean kingside) {
+        Map<Side, Boolean> rules = kingside
+            ? kingsideCastlingRules
+            : queensideCastlingRules;
+        if (!rules.get(s)) {
+            return false;
+        }
+
+        int king = Bitboards.square(s.getBackRow(), 4);
+        int rook = Bitboards.square(s.getBackRow(), kingside ? 7 : 0);
+        Piece kingPiece = getPieceAt(king);
+        Piece rookPiece = getPieceAt(rook);
+        if (!(kingPiece instanceof King) || !(rookPiece instanceof Rook)
+                || rookPiece.getSide() != s
+                || (Bitboards.between(king, rook) & occupied)
+                != Bitboards.EMPTY) {
+            return false;
+        }
+
+        int step = kingside ? 1 : -1;
+        Side them = opponent(s);
+        for (int sq = king; sq != king + 3 * step; sq += step) {
+            if (isAttacked(sq, them)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Piece takeSparePiece(ChessPiece.ChessPieceType type, Side side) {
+        int i = Bitboards.index(side, type);
+        if (spareCounts[i] > 0) {
+            return sparePieces[i][--spareCounts[i]];
+        }
+        return ChessUtils.getPieceOfType(type, side);
+    }
+
+    private void addSparePiece(Piece p) {
+        int i = Bitboards.index(p);
+        if (spareCounts[i] == sparePieces[i].length) {
+            sparePieces[i] = Arrays.copyOf(sparePieces[i],
+                    sparePieces[i].length * 2);
+        }
+        sparePieces[i][spareCounts[i]++] = p;
+    }
+
     private void placePiece(Piece p, Position pos) {
+        placePiece(p, Bitboards.square(pos));
+    }
+
+    private void placePiece(Piece p, int square) {
         if (p.getSide().equals(Side.BLACK)) {
-            blackPositions.put(p, pos);
+            blackPositions.put(p, Bitboards.position(square));
         } else {
-            whitePositions.put(p, pos);
+            whitePositions.put(p, Bitboards.position(square));
         }
-        board[pos.getRow()][pos.getCol()] = p;
+        board[Bitboards.row(square)][Bitboards.col(square)] = p;
+        toggleBit(p, square);
+    }
+
+    // moves p without taking it out of the position maps
+    private void relocatePiece(Piece p, int from, int to) {
+        if (p.getSide().equals(Side.BLACK)) {
+            blackPositions.put(p, Bitboards.position(to));
+        } else {
+            whitePositions.put(p, Bitboards.position(to));
+        }
+        board[Bitboards.row(from)][Bitboards.col(from)] = null;
+        board[Bitboards.row(to)][Bitboards.col(to)] = p;
+        toggleBit(p, from);
+        toggleBit(p, to);
     }
 
     private void removePiece(Piece p) {
         Position pos;
         if (p.getSide().equals(Side.BLACK)) {
             pos = blackPositions.get(p);
-            blackPositions.remove(p);
         } else {
             pos = whitePositions.get(p);
+        }
+        removePiece(p, Bitboards.square(pos));
+    }
+
+    private void removePiece(Piece p, int square) {
+        if (p.getSide().equals(Side.BLACK)) {
+            blackPositions.remove(p);
+        } else {
             whitePositions.remove(p);
         }
-        board[pos.getRow()][pos.getCol()] = null;
+        board[Bitboards.row(square)][Bitboards.col(square)] = null;
+        toggleBit(p, square);
+    }
+
+    // flips p in or out of square in the bitboards, the hash, the
+    // evaluation sums and the network's accumulator
+    private void toggleBit(Piece p, int square) {
+        long b = Bitboards.bit(square);
+        int index = Bitboards.index(p);
+        bitboards[index] ^= b;
+        sideOccupancy[p.getSide().ordinal()] ^= b;
+        occupied ^= b;
+        hash ^= Zobrist.piece(p, square);
+        if (p instanceof Pawn) {
+            pawnHash ^= Zobrist.piece(p, square);
+        }
+
+        int sign = (bitboards[index] & b) != Bitboards.EMPTY ? 1 : -1;
+        middlegameScore += sign * PieceSquareTables.middlegame(index, square);
+        endgameScore += sign * PieceSquareTables.endgame(index, square);
+        phase += sign * PieceSquareTables.phase(index);
+        if (accumulator != null) {
+            accumulator.toggle(index, square, sign > 0);
+        }
+    }
+
+    private void setEnPassantPawnSquare(int square) {
+        if (enPassantPawnSquare >= 0) {
+            hash ^= Zobrist.enPassant(Bitboards.col(enPassantPawnSquare));
+        }
+        enPassantPawnSquare = square;
+        if (enPassantPawnSquare >= 0) {
+            hash ^= Zobrist.enPassant(Bitboards.col(enPassantPawnSquare));
+        }
+    }
+
+    private void updateMoveCounters(Piece mover, boolean capture) {
+        if (mover instanceof Pawn || capture) {
+            halfmoveClock = 0;
+        } else {
+            halfmoveClock++;
+        }
+        if (mover.getSide() == Side.BLACK) {
+            fullmoveNumber++;
+        }
+    }
+
+    private void setSideToMove(Side s) {
+        if (s != sideToMove) {
+            hash ^= Zobrist.blackToMove();
+            sideToMove = s;
+        }
+    }
+
+    private void enableKingside(Side s) {
+        kingsideCastlingRules.put(s, true);
+        hash ^= Zobrist.kingsideCastling(s);
+    }
+
+    private void enableQueenside(Side s) {
+        queensideCastlingRules.put(s, true);
+        hash ^= Zobrist.queensideCastling(s);
+    }
+
+    private void disableKingside(Side s) {
+        if (kingsideCastlingRules.get(s)) {
+            kingsideCastlingRules.put(s, false);
+            hash ^= Zobrist.kingsideCastling(s);
+        }
+    }
+
+    private void disableQueenside(Side s) {
+        if (queensideCastlingRules.get(s)) {
+            queensideCastlingRules.put(s, false);
+            hash ^= Zobrist.queensideCastling(s);
+        }
     }
 
     private void validateCastling(Piece p, Move m) {
-        if (p instanceof King && m.getStart().getCol() == 4
-                && (m.getStart().getRow() == p.getSide().getBackRow())) {
-            kingsideCastlingRules.put(p.getSide(), false);
-            queensideCastlingRules.put(p.getSide(), false);
-        } else if (p instanceof Rook && m.getStart().getCol() == 0
-                && m.getStart().getRow() == p.getSide().getBackRow()) {
-            queensideCastlingRules.put(p.getSide(), false);
-        } else if (p instanceof Rook && m.getStart().getCol() == 7
-                && m.getStart().getRow() == p.getSide().getBackRow()) {
-            kingsideCastlingRules.put(p.getSide(), false);
+        updateCastlingRights(p, Bitboards.square(m.getStart()),
+                Bitboards.square(m.getDestination()));
+    }
+
+    private void updateCastlingRights(Piece p, int from, int to) {
+        Side side = p.getSide();
+        if (p instanceof King
+                && from == Bitboards.square(side.getBackRow(), 4)) {
+            disableKingside(side);
+            disableQueenside(side);
+        } else if (p instanceof Rook
+                && from == Bitboards.square(side.getBackRow(), 0)) {
+            disableQueenside(side);
+        } else if (p instanceof Rook
+                && from == Bitboards.square(side.getBackRow(), 7)) {
+            disableKingside(side);
+        }
+
+        // a rook captured in its corner takes its castling right with it
+        Side other = opponent(side);
+        if (to == Bitboards.square(other.getBackRow(), 0)) {
+            disableQueenside(other);
+        } else if (to == Bitboards.square(other.getBackRow(), 7)) {
+            disableKingside(other);
         }
     }
+
+    private static Side opponent(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+
+    /**
+     * Everything makeMove changes that unmakeMove cannot work out from the
+     * move itself. Search code should keep one per ply and reuse it.
+     */
+    public static class MoveUndo {
+        private int move;
+        private Piece mover;
+        private Piece captured;
+        private int captureSquare;
+        private Piece promoted;
+        private boolean whiteKingside;
+        private boolean whiteQueenside;
+        private boolean blackKingside;
+        private boolean blackQueenside;
+        private int enPassantPawnSquare;
+        private Side sideToMove;
+        private long hash;
+        private int halfmoveClock;
+        private int fullmoveNumber;
+    }
 }
@@ -1,5 +1,6 @@
 package model.chess;
 
+import java.util.HashSet;
 import java.util.Set;
 import model.Move;
 import model.Piece;
@@ -27,6 +28,25 @@ public abstract class ChessPiece implements Piece {
     @Override
     public abstract Set<Move> generateMoves(Position curPos);
 
+    /**
+     * Turns an attack bitboard into Moves from curPos
+     *
+     * @param curPos the start of every move
+     * @param targets the destination squares, see Bitboards
+     * @param isJump whether the moves are jumps
+     * @return a move to each target square
+     */
+    protected static Set<Move> movesTo(Position curPos, long targets,
+            boolean isJump) {
+        Set<Move> moves = new HashSet<>();
+        while (targets != Bitboards.EMPTY) {
+            int to = Bitboards.lowestSquare(targets);
+            targets &= targets - 1;
+            moves.add(new Move(curPos, Bitboards.position(to), isJump));
+        }
+        return moves;
+    }
+
     @Override
     public int hashCode() {
         return id;
@@ -0,0 +1,104 @@
+package model.chess;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streams an EPD file one record at a time into a board the caller reuses,
+ * so suites of any size can be worked through without holding them in
+ * memory. An EPD record is the first four FEN fields followed by
+ * operations, each an opcode and its operands ended by a semicolon:
+ *
+ *     rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 bm e5; id "x";
+ *
+ * Full FEN records, with the move counters, are read as well. Blank lines
+ * and lines starting with # are skipped.
+ *
+ * @author Joe
+ */
+public class EpdReader implements Closeable {
+
+    private BufferedReader reader;
+    private String line;
+    private int lineNumber;
+    private int operationsStart;
+
+    public EpdReader(Reader in) {
+        reader = in instanceof BufferedReader
+            ? (BufferedReader) in
+            : new BufferedReader(in);
+    }
+
+    /**
+     * Loads the next record into board.
+     *
+     * @param board the board to load into
+     * @return false once the end of the input has been reached
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if a record is not a valid position,
+     * its message holds the line number
+     */
+    public boolean next(ChessBoard board) throws IOException {
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+                continue;
+            }
+            try {
+                operationsStart = Fen.parse(board, line, 0);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + lineNumber
+                        + ": " + e.getMessage(), e);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the whole line the last record was read from
+     */
+    public String getLine() {
+        return line;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Finds an operation of the last record, e.g. "bm" for the best move or
+     * "D5" for a perft count in perft suites.
+     *
+     * @param opcode the opcode to look for
+     * @return the operands of the first operation with that opcode, without
+     * surrounding spaces, or null if there is none
+     */
+    public String getOperation(String opcode) {
+        int i = operationsStart;
+        while (i < line.length()) {
+            int end = line.indexOf(';', i);
+            if (end < 0) {
+                end = line.length();
+            }
+            while (i < end && line.charAt(i) == ' ') {
+                i++;
+            }
+            if (line.startsWith(opcode, i)
+                    && (i + opcode.length() == end
+                        || line.charAt(i + opcode.length()) == ' ')) {
+                return line.substring(i + opcode.length(), end).trim();
+            }
+            i = end + 1;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
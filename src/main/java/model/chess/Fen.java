@@ -0,0 +1,417 @@
+package model.chess;
+
+import model.Piece;
+import model.Side;
+
+/**
+ * Reads and writes Forsyth-Edwards Notation for ChessBoard, e.g. the
+ * starting position
+ *
+ *     rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1
+ *
+ * The parser works straight off the characters without splitting, so the
+ * only allocations while loading are one array of bitboards for the check
+ * test and the ones the board itself makes. The
+ * halfmove and fullmove fields are optional, which lets the same parser
+ * read the first four fields of an EPD record: parse(board, text) takes a
+ * whole record and nothing else, parse(board, text, start) stops after the
+ * fields and leaves the rest, such as EPD operations, to the caller.
+ *
+ * Castling rights whose king and rook are not on their starting squares
+ * are dropped, like an en passant square no pawn can use, so the same
+ * position always loads the same way.
+ *
+ * @author Joe
+ */
+public class Fen {
+
+    public static final String START_POSITION =
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // castling bits handed to ChessBoard.setState
+    static final int WHITE_KINGSIDE = 1;
+    static final int WHITE_QUEENSIDE = 2;
+    static final int BLACK_KINGSIDE = 4;
+    static final int BLACK_QUEENSIDE = 8;
+
+    /**
+     * Loads a FEN record that makes up all of text, apart from spaces
+     * around it, into board. The board is only changed once the record has
+     * been read successfully.
+     *
+     * @param board the board to load into
+     * @param text the record
+     * @throws IllegalArgumentException if text is not a valid position, see
+     * parse(board, text, start), or has anything after the record
+     */
+    public static void parse(ChessBoard board, CharSequence text) {
+        parse(board, text, 0, true);
+    }
+
+    /**
+     * Loads the FEN record starting at index start of text into board. The
+     * board is only changed once the record has been read successfully.
+     *
+     * @param board the board to load into
+     * @param text holds the record
+     * @param start index of the first character of the record
+     * @return the index just past the last field read
+     * @throws IllegalArgumentException if the record is not a valid position,
+     * including one with a pawn on the first or last rank, with the side
+     * not to move in check or with a move number that does not fit an int
+     */
+    public static int parse(ChessBoard board, CharSequence text, int start) {
+        return parse(board, text, start, false);
+    }
+
+    private static int parse(ChessBoard board, CharSequence text, int start,
+            boolean whole) {
+        int i = skipSpaces(text, start);
+        int placement = i;
+        i = checkPlacement(text, i);
+
+        i = expectSpace(text, i);
+        Side toMove;
+        if (i < text.length() && text.charAt(i) == 'w') {
+            toMove = Side.WHITE;
+        } else if (i < text.length() && text.charAt(i) == 'b') {
+            toMove = Side.BLACK;
+        } else {
+            throw error(text, "side to move must be w or b");
+        }
+        i++;
+        checkNotInCheck(text, placement, toMove);
+
+        i = expectSpace(text, i);
+        int castling = 0;
+        if (i < text.length() && text.charAt(i) == '-') {
+            i++;
+        } else {
+            for (; i < text.length() && text.charAt(i) != ' '; i++) {
+                castling |= castlingBit(text, text.charAt(i));
+            }
+        }
+
+        i = expectSpace(text, i);
+        int enPassantPawnSquare = -1;
+        if (i < text.length() && text.charAt(i) == '-') {
+            i++;
+        } else if (i + 1 < text.length()) {
+            int col = text.charAt(i) - 'a';
+            // white to move takes a black pawn that stopped on row 3
+            int targetRow = toMove == Side.WHITE ? 2 : 5;
+            if (col < 0 || col > 7 || '8' - text.charAt(i + 1) != targetRow) {
+                throw error(text, "bad en passant square");
+            }
+            enPassantPawnSquare = Bitboards.square(
+                    toMove == Side.WHITE ? 3 : 4, col);
+            i += 2;
+        } else {
+            throw error(text, "missing en passant square");
+        }
+
+        int halfmoves = 0;
+        int fullmoves = 1;
+        int j = skipSpaces(text, i);
+        if (j + 1 < text.length() && text.charAt(j) == '-'
+                && isDigit(text.charAt(j + 1))) {
+            throw error(text, "negative halfmove clock");
+        }
+        if (j < text.length() && isDigit(text.charAt(j))) {
+            int end = digitsEnd(text, j);
+            halfmoves = number(text, j, end, "halfmove clock");
+            j = expectSpace(text, end);
+            if (j >= text.length() || !isDigit(text.charAt(j))) {
+                throw error(text, "missing fullmove number");
+            }
+            end = digitsEnd(text, j);
+            fullmoves = number(text, j, end, "fullmove number");
+            i = end;
+        }
+        if (whole && skipSpaces(text, i) != text.length()) {
+            throw error(text, "unexpected text after the record");
+        }
+
+        board.clear();
+        int square = 0;
+        for (int k = placement; square < 64; k++) {
+            char c = text.charAt(k);
+            if (isDigit(c)) {
+                square += c - '0';
+            } else if (c != '/') {
+                board.addPiece(pieceType(c),
+                        Character.isUpperCase(c) ? Side.WHITE : Side.BLACK,
+                        square++);
+            }
+        }
+
+        // some writers give the square after every double push
+        if (enPassantPawnSquare >= 0) {
+            Piece pawn = board.getPieceAt(enPassantPawnSquare);
+            if (!(pawn instanceof Pawn) || pawn.getSide() == toMove) {
+                enPassantPawnSquare = -1;
+            }
+        }
+        castling &= castlingPossible(board, Side.WHITE, WHITE_KINGSIDE,
+                WHITE_QUEENSIDE)
+            | castlingPossible(board, Side.BLACK, BLACK_KINGSIDE,
+                BLACK_QUEENSIDE);
+        board.setState(toMove, castling, enPassantPawnSquare, halfmoves,
+                fullmoves);
+        return i;
+    }
+
+    /**
+     * @param board a board
+     * @return its position as a FEN record
+     */
+    public static String write(ChessBoard board) {
+        StringBuilder sb = new StringBuilder(90);
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                Piece p = board.getPieceAt(Bitboards.square(row, col));
+                if (p == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    sb.append(empty);
+                    empty = 0;
+                }
+                char c = pieceChar((ChessPiece.ChessPieceType) p.getType());
+                sb.append(p.getSide() == Side.WHITE
+                    ? Character.toUpperCase(c)
+                    : c);
+            }
+            if (empty > 0) {
+                sb.append(empty);
+            }
+            if (row < 7) {
+                sb.append('/');
+            }
+        }
+
+        sb.append(board.getSideToMove() == Side.WHITE ? " w " : " b ");
+
+        int length = sb.length();
+        if (board.hasCastlingRight(Side.WHITE, true)) {
+            sb.append('K');
+        }
+        if (board.hasCastlingRight(Side.WHITE, false)) {
+            sb.append('Q');
+        }
+        if (board.hasCastlingRight(Side.BLACK, true)) {
+            sb.append('k');
+        }
+        if (board.hasCastlingRight(Side.BLACK, false)) {
+            sb.append('q');
+        }
+        if (sb.length() == length) {
+            sb.append('-');
+        }
+
+        int pawn = board.getEnPassantPawnSquare();
+        if (pawn < 0) {
+            sb.append(" -");
+        } else {
+            // the square the pawn skipped over
+            int target = board.getSideToMove() == Side.WHITE
+                ? pawn - 8
+                : pawn + 8;
+            sb.append(' ').append((char) ('a' + Bitboards.col(target)))
+                .append((char) ('8' - Bitboards.row(target)));
+        }
+
+        sb.append(' ').append(board.getHalfmoveClock())
+            .append(' ').append(board.getFullmoveNumber());
+        return sb.toString();
+    }
+
+    // checks the piece placement field, that each side has one king and
+    // that no pawn stands on the first or last rank
+    private static int checkPlacement(CharSequence text, int i) {
+        int row = 0;
+        int col = 0;
+        int whiteKings = 0;
+        int blackKings = 0;
+        for (; i < text.length() && text.charAt(i) != ' '; i++) {
+            char c = text.charAt(i);
+            if (c == '/') {
+                if (col != 8) {
+                    throw error(text, "row " + (row + 1) + " is not 8 wide");
+                }
+                row++;
+                col = 0;
+            } else if (c >= '1' && c <= '8') {
+                col += c - '0';
+            } else {
+                if ((c == 'P' || c == 'p') && (row == 0 || row == 7)) {
+                    throw error(text, "pawn on the first or last rank");
+                }
+                pieceType(c);
+                if (c == 'K') {
+                    whiteKings++;
+                } else if (c == 'k') {
+                    blackKings++;
+                }
+                col++;
+            }
+            if (col > 8 || row > 7) {
+                throw error(text, "too many squares");
+            }
+        }
+        if (row != 7 || col != 8) {
+            throw error(text, "placement does not cover 64 squares");
+        }
+        if (whiteKings != 1 || blackKings != 1) {
+            throw error(text, "each side needs exactly one king");
+        }
+        return i;
+    }
+
+    // checks that the side that just moved did not leave its king in check
+    private static void checkNotInCheck(CharSequence text, int placement,
+            Side toMove) {
+        long[] bitboards = new long[2 * Bitboards.PIECE_TYPES];
+        long occupied = Bitboards.EMPTY;
+        int square = 0;
+        for (int k = placement; square < 64; k++) {
+            char c = text.charAt(k);
+            if (isDigit(c)) {
+                square += c - '0';
+            } else if (c != '/') {
+                Side side = Character.isUpperCase(c) ? Side.WHITE : Side.BLACK;
+                bitboards[Bitboards.index(side, pieceType(c))] |=
+                    Bitboards.bit(square);
+                occupied |= Bitboards.bit(square);
+                square++;
+            }
+        }
+        Side moved = toMove == Side.WHITE ? Side.BLACK : Side.WHITE;
+        int king = Bitboards.lowestSquare(bitboards[Bitboards.index(moved,
+                ChessPiece.ChessPieceType.KING)]);
+        if (AttackTables.attackersOf(king, toMove, occupied, bitboards)
+                != Bitboards.EMPTY) {
+            throw error(text, "the side not to move is in check");
+        }
+    }
+
+    private static ChessPiece.ChessPieceType pieceType(char c) {
+        switch (Character.toLowerCase(c)) {
+        case 'p':
+            return ChessPiece.ChessPieceType.PAWN;
+        case 'n':
+            return ChessPiece.ChessPieceType.KNIGHT;
+        case 'b':
+            return ChessPiece.ChessPieceType.BISHOP;
+        case 'r':
+            return ChessPiece.ChessPieceType.ROOK;
+        case 'q':
+            return ChessPiece.ChessPieceType.QUEEN;
+        case 'k':
+            return ChessPiece.ChessPieceType.KING;
+        default:
+            throw new IllegalArgumentException("bad piece letter " + c);
+        }
+    }
+
+    private static char pieceChar(ChessPiece.ChessPieceType type) {
+        switch (type) {
+        case PAWN:
+            return 'p';
+        case KNIGHT:
+            return 'n';
+        case BISHOP:
+            return 'b';
+        case ROOK:
+            return 'r';
+        case QUEEN:
+            return 'q';
+        default:
+            return 'k';
+        }
+    }
+
+    private static int castlingBit(CharSequence text, char c) {
+        switch (c) {
+        case 'K':
+            return WHITE_KINGSIDE;
+        case 'Q':
+            return WHITE_QUEENSIDE;
+        case 'k':
+            return BLACK_KINGSIDE;
+        case 'q':
+            return BLACK_QUEENSIDE;
+        default:
+            throw error(text, "bad castling letter " + c);
+        }
+    }
+
+    // the castling bits of side whose king and rook are on their starting
+    // squares
+    private static int castlingPossible(ChessBoard board, Side side,
+            int kingside, int queenside) {
+        int row = side.getBackRow();
+        if ((board.getBitboard(side, ChessPiece.ChessPieceType.KING)
+                & Bitboards.bit(Bitboards.square(row, 4))) == Bitboards.EMPTY) {
+            return 0;
+        }
+        long rooks = board.getBitboard(side, ChessPiece.ChessPieceType.ROOK);
+        int bits = 0;
+        if ((rooks & Bitboards.bit(Bitboards.square(row, 7)))
+                != Bitboards.EMPTY) {
+            bits |= kingside;
+        }
+        if ((rooks & Bitboards.bit(Bitboards.square(row, 0)))
+                != Bitboards.EMPTY) {
+            bits |= queenside;
+        }
+        return bits;
+    }
+
+    // the digits from i to end as a number, which must fit an int
+    private static int number(CharSequence text, int i, int end,
+            String field) {
+        int n = 0;
+        for (; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (n > (Integer.MAX_VALUE - digit) / 10) {
+                throw error(text, field + " out of range");
+            }
+            n = n * 10 + digit;
+        }
+        return n;
+    }
+
+    private static int digitsEnd(CharSequence text, int i) {
+        while (i < text.length() && isDigit(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int skipSpaces(CharSequence text, int i) {
+        while (i < text.length() && text.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int expectSpace(CharSequence text, int i) {
+        if (i >= text.length() || text.charAt(i) != ' ') {
+            throw error(text, "fields must be separated by spaces");
+        }
+        return skipSpaces(text, i);
+    }
+
+    private static IllegalArgumentException error(CharSequence text,
+            String problem) {
+        return new IllegalArgumentException("invalid FEN, " + problem + ": "
+                + text);
+    }
+}
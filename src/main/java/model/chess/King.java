@@ -1,6 +1,5 @@
 package model.chess;
 
-import java.util.HashSet;
 import java.util.Set;
 import model.Move;
 import model.Position;
@@ -14,22 +13,7 @@ public class King  extends ChessPiece {
 
     @Override
     public Set<Move> generateMoves(Position curPos) {
-        Set<Move> moves = new HashSet<>();
-        int curCol = curPos.getCol();
-        int curRow = curPos.getRow();
-
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dy = -1; dy <= 1; dy++) {
-                if (dx != 0 || dy != 0) {
-                    int destCol = curCol + dx;
-                    int destRow = curRow + dy;
-                    if (ChessUtils.posBoundsTest(destRow, destCol)) {
-                        Position destPos = new Position(destRow, destCol);
-                        moves.add(new Move(curPos, destPos));
-                    }
-                }
-            }
-        }
-        return moves;
+        return movesTo(curPos,
+                AttackTables.kingAttacks(Bitboards.square(curPos)), false);
     }
 }
@@ -0,0 +1,73 @@
+package model.chess;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of PackedMove ints. Move generation appends to a list
+ * the caller owns, so one list per search ply can be cleared and refilled
+ * without allocating anything.
+ *
+ * @author Joe
+ */
+public class MoveList {
+
+    // no legal chess position has more moves than this
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private int[] moves;
+    private int size;
+
+    public MoveList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MoveList(int capacity) {
+        moves = new int[capacity];
+    }
+
+    public void add(int move) {
+        if (size == moves.length) {
+            moves = Arrays.copyOf(moves, size * 2);
+        }
+        moves[size++] = move;
+    }
+
+    public int get(int i) {
+        return moves[i];
+    }
+
+    public void set(int i, int move) {
+        moves[i] = move;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Drops every move from index size on
+     */
+    public void truncate(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(PackedMove.toString(moves[i]));
+        }
+        return sb.append("]").toString();
+    }
+}
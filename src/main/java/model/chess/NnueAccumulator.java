@@ -0,0 +1,72 @@
+package model.chess;
+
+import model.Side;
+
+/**
+ * The first layer of an NnueNetwork for one board, both points of view.
+ * ChessBoard calls toggle every time it puts a piece on a square or takes
+ * one off, so moving a piece costs two columns of weights per point of
+ * view instead of the whole layer.
+ *
+ * @author Joe
+ */
+class NnueAccumulator {
+
+    private final NnueNetwork network;
+    // by Side ordinal
+    private final short[][] values;
+
+    NnueAccumulator(NnueNetwork network) {
+        this.network = network;
+        values = new short[2][network.getHiddenSize()];
+        reset();
+    }
+
+    private NnueAccumulator(NnueAccumulator a) {
+        network = a.network;
+        values = new short[][] {a.values[0].clone(), a.values[1].clone()};
+    }
+
+    NnueAccumulator copy() {
+        return new NnueAccumulator(this);
+    }
+
+    NnueNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Back to an empty board.
+     */
+    void reset() {
+        network.reset(values[0]);
+        network.reset(values[1]);
+    }
+
+    /**
+     * @param index Bitboards.index of the piece
+     * @param square where it was put or taken from
+     * @param added whether it was put there
+     */
+    void toggle(int index, int square, boolean added) {
+        // both points of view spelled out, this runs for every piece moved
+        int white = NnueNetwork.input(Side.WHITE, index, square);
+        int black = NnueNetwork.input(Side.BLACK, index, square);
+        if (added) {
+            network.add(values[Side.WHITE.ordinal()], white);
+            network.add(values[Side.BLACK.ordinal()], black);
+        } else {
+            network.subtract(values[Side.WHITE.ordinal()], white);
+            network.subtract(values[Side.BLACK.ordinal()], black);
+        }
+    }
+
+    /**
+     * @param toMove the side to move
+     * @return the network's score for it, in centipawns
+     */
+    int evaluate(Side toMove) {
+        return network.evaluate(values[toMove.ordinal()],
+                values[1 - toMove.ordinal()]);
+    }
+}
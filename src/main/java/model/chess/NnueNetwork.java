@@ -0,0 +1,205 @@
+package model.chess;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import model.Side;
+
+/**
+ * An efficiently updatable neural network (NNUE) evaluation, the simple
+ * 768 -> N x 2 -> 1 kind:
+ *
+ * - 768 inputs per point of view, one for each piece kind on each square,
+ *   with the pieces split into "mine" and "theirs" and the board mirrored
+ *   for black, so both sides see the position the same way
+ * - a first layer of N neurons per point of view, the accumulators, which
+ *   NnueAccumulator keeps up to date as pieces move rather than computing
+ *   from scratch
+ * - the side to move's accumulator and then the other side's, each
+ *   clipped to 0 to QA, feeding a single output
+ *
+ * Weights are 16 bit integers quantised by QA in the first layer and QB in
+ * the output, and the output is scaled by SCALE / (QA * QB) to centipawns.
+ * This is the format common NNUE trainers export for such networks.
+ *
+ * The file is little-endian: "JCNN", a version int, N as an int, then the
+ * first layer weights input by input (768 * N shorts), its N biases, the
+ * 2 * N output weights and one output bias short. Inputs are numbered
+ * 384 * (0 mine, 1 theirs) + 64 * kind + square, kinds running pawn,
+ * knight, bishop, rook, queen, king and squares from a1 = 0 to h8 = 63
+ * from the point of view's own side.
+ *
+ * load maps the file but copies the weights out into plain short arrays
+ * rather than reading them through the mapped ShortBuffer. The accumulator
+ * updates are the hot loops, run for every move made and unmade. Over
+ * arrays HotSpot drops the bounds checks and compiles them to SIMD
+ * instructions on its own. Over a buffer every get is a checked call and
+ * the loops stay scalar. The copy is 2 * (768 + 3) * N bytes, about 1.5 MB
+ * for N = 1024, and the mapping is released once it is made.
+ *
+ * @author Joe
+ */
+public class NnueNetwork {
+
+    public static final int INPUTS = 768;
+    public static final int QA = 255;
+    public static final int QB = 64;
+    public static final int SCALE = 400;
+
+    private static final byte[] MAGIC =
+        "JCNN".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER = 12;
+
+    // input kind by ChessPieceType ordinal: PAWN, ROOK, KNIGHT, BISHOP,
+    // QUEEN, KING
+    private static final int[] KIND = {0, 3, 1, 2, 4, 5};
+
+    private final int hidden;
+    // [input * hidden + neuron]
+    private final short[] inputWeights;
+    private final short[] inputBiases;
+    // the side to move's neurons, then the other side's
+    private final short[] outputWeights;
+    private final int outputBias;
+
+    /**
+     * @param hidden N, neurons per point of view
+     * @param inputWeights 768 * N first layer weights, input by input
+     * @param inputBiases N first layer biases
+     * @param outputWeights 2 * N output weights
+     * @param outputBias the output bias
+     */
+    public NnueNetwork(int hidden, short[] inputWeights, short[] inputBiases,
+            short[] outputWeights, int outputBias) {
+        if (hidden < 1 || inputWeights.length != INPUTS * hidden
+                || inputBiases.length != hidden
+                || outputWeights.length != 2 * hidden) {
+            throw new IllegalArgumentException(
+                    "weights do not match " + hidden + " neurons");
+        }
+        this.hidden = hidden;
+        this.inputWeights = inputWeights.clone();
+        this.inputBiases = inputBiases.clone();
+        this.outputWeights = outputWeights.clone();
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * Reads a network file by mapping it into memory and copying the
+     * weights out, see the class comment.
+     *
+     * @param file the file, see the class comment
+     * @return the network
+     * @throws IOException if it cannot be read or is not a network
+     */
+    public static NnueNetwork load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            if (channel.size() < HEADER) {
+                throw new IOException(file + " is not a network file");
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            bytes.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            bytes.get(magic);
+            int version = bytes.getInt();
+            int hidden = bytes.getInt();
+            if (!java.util.Arrays.equals(magic, MAGIC) || version != VERSION
+                    || hidden < 1 || hidden > 1 << 16) {
+                throw new IOException(file + " is not a network file");
+            }
+            long shorts = (long) (INPUTS + 3) * hidden + 1;
+            if (channel.size() != HEADER + 2 * shorts) {
+                throw new IOException(file + " has the wrong size for "
+                        + hidden + " neurons");
+            }
+
+            ShortBuffer weights = bytes.asShortBuffer();
+            short[] inputWeights = new short[INPUTS * hidden];
+            short[] inputBiases = new short[hidden];
+            short[] outputWeights = new short[2 * hidden];
+            weights.get(inputWeights).get(inputBiases).get(outputWeights);
+            return new NnueNetwork(hidden, inputWeights, inputBiases,
+                    outputWeights, weights.get());
+        }
+    }
+
+    /**
+     * @return N, the neurons per point of view
+     */
+    public int getHiddenSize() {
+        return hidden;
+    }
+
+    /**
+     * @param perspective whose point of view
+     * @param index Bitboards.index of a piece
+     * @param square where it stands
+     * @return its input number for that point of view
+     */
+    static int input(Side perspective, int index, int square) {
+        int side = index / Bitboards.PIECE_TYPES;
+        int kind = KIND[index % Bitboards.PIECE_TYPES];
+        // row 0 is black's back rank, so white's a1 = 0 is square ^ 56
+        int relative = perspective == Side.WHITE ? square ^ 56 : square;
+        return (side == perspective.ordinal() ? 0 : 384) + 64 * kind
+            + relative;
+    }
+
+    /**
+     * Sets an accumulator to the first layer's biases, as for an empty
+     * board.
+     */
+    void reset(short[] accumulator) {
+        System.arraycopy(inputBiases, 0, accumulator, 0, hidden);
+    }
+
+    /**
+     * Adds an input's weights to an accumulator.
+     */
+    void add(short[] accumulator, int input) {
+        int offset = input * hidden;
+        for (int i = 0; i < hidden; i++) {
+            accumulator[i] += inputWeights[offset + i];
+        }
+    }
+
+    /**
+     * Takes an input's weights away from an accumulator.
+     */
+    void subtract(short[] accumulator, int input) {
+        int offset = input * hidden;
+        for (int i = 0; i < hidden; i++) {
+            accumulator[i] -= inputWeights[offset + i];
+        }
+    }
+
+    /**
+     * @param us the side to move's accumulator
+     * @param them the other side's
+     * @return the score in centipawns for the side to move
+     */
+    int evaluate(short[] us, short[] them) {
+        // each term is up to QA * 32767, so 2 * N of them overflow an int
+        // from N = 129 up. The result fits easily
+        long sum = 0;
+        for (int i = 0; i < hidden; i++) {
+            sum += clip(us[i]) * outputWeights[i];
+        }
+        for (int i = 0; i < hidden; i++) {
+            sum += clip(them[i]) * outputWeights[hidden + i];
+        }
+        return (int) ((sum / QA + outputBias) * SCALE / (QA * QB));
+    }
+
+    private static int clip(short x) {
+        return Math.min(Math.max(x, 0), QA);
+    }
+}
@@ -0,0 +1,90 @@
+package model.chess;
+
+/**
+ * Encodes a chess move in a single int, so move lists and search code can
+ * pass moves around without allocating Move objects.
+ *
+ * Bits 0-5 hold the start square and bits 6-11 the destination square (see
+ * Bitboards for the square numbering), bits 12-15 hold the flags below and
+ * bits 16-18 the ChessPieceType ordinal a pawn promotes to.
+ *
+ * @author Joe
+ */
+public class PackedMove {
+
+    /** Not a move, returned when there is nothing to play */
+    public static final int NONE = 0;
+
+    public static final int CAPTURE = 1;
+    public static final int PROMOTION = 2;
+    public static final int EN_PASSANT = 4;
+    public static final int CASTLING = 8;
+
+    public static int encode(int from, int to, int flags) {
+        return from | (to << 6) | (flags << 12);
+    }
+
+    public static int encode(int from, int to, int flags,
+            ChessPiece.ChessPieceType promotion) {
+        return encode(from, to, flags | PROMOTION)
+            | (promotion.ordinal() << 16);
+    }
+
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static int flags(int move) {
+        return (move >>> 12) & 0xF;
+    }
+
+    public static boolean isCapture(int move) {
+        return (flags(move) & CAPTURE) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (flags(move) & PROMOTION) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (flags(move) & EN_PASSANT) != 0;
+    }
+
+    public static boolean isCastling(int move) {
+        return (flags(move) & CASTLING) != 0;
+    }
+
+    /**
+     * @return the type a promotion move promotes to, null for other moves
+     */
+    public static ChessPiece.ChessPieceType promotion(int move) {
+        return isPromotion(move)
+            ? ChessPiece.ChessPieceType.values()[(move >>> 16) & 0x7]
+            : null;
+    }
+
+    /**
+     * @return the move in long algebraic notation, like e2e4 or a7a8q
+     */
+    public static String toString(int move) {
+        StringBuilder sb = new StringBuilder();
+        appendSquare(sb, from(move));
+        appendSquare(sb, to(move));
+        ChessPiece.ChessPieceType promotion = promotion(move);
+        if (promotion != null) {
+            sb.append(promotion == ChessPiece.ChessPieceType.KNIGHT
+                ? 'n'
+                : Character.toLowerCase(promotion.name().charAt(0)));
+        }
+        return sb.toString();
+    }
+
+    private static void appendSquare(StringBuilder sb, int square) {
+        sb.append((char) ('a' + Bitboards.col(square)));
+        sb.append((char) ('8' - Bitboards.row(square)));
+    }
+}
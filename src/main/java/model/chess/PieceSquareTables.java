@@ -0,0 +1,172 @@
+package model.chess;
+
+import model.Side;
+
+/**
+ * Material and piece-square values for the evaluation, one set for the
+ * middlegame and one for the endgame, blended by how much material is left.
+ * ChessBoard adds and subtracts these as pieces come and go, so the sums are
+ * always ready without looking at the board.
+ *
+ * The tables are the ones from Tomasz Michniewski's "simplified evaluation
+ * function", written from white's side with rank 8 on top, which is the
+ * same order as the board's squares. Only pawns and kings play differently
+ * in the endgame: pawns get more for advancing and the king moves to the
+ * centre. The combined tables hold material plus square bonus, positive for
+ * white pieces and negative for black ones, which look the square up
+ * flipped vertically.
+ *
+ * @author Joe
+ */
+public class PieceSquareTables {
+
+    /** The phase with every piece on the board, 0 is a bare endgame */
+    public static final int MAX_PHASE = 24;
+
+    // indexed by ChessPieceType ordinal: PAWN, ROOK, KNIGHT, BISHOP, QUEEN,
+    // KING
+    private static final int[] PIECE_VALUES = {100, 500, 320, 330, 900, 0};
+    private static final int[] PHASE_WEIGHTS = {0, 2, 1, 1, 4, 0};
+
+    private static final int[] PAWN_MIDDLEGAME = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+        50, 50, 50, 50, 50, 50, 50, 50,
+        10, 10, 20, 30, 30, 20, 10, 10,
+         5,  5, 10, 25, 25, 10,  5,  5,
+         0,  0,  0, 20, 20,  0,  0,  0,
+         5, -5,-10,  0,  0,-10, -5,  5,
+         5, 10, 10,-20,-20, 10, 10,  5,
+         0,  0,  0,  0,  0,  0,  0,  0};
+
+    private static final int[] KNIGHT_TABLE = {
+        -50,-40,-30,-30,-30,-30,-40,-50,
+        -40,-20,  0,  0,  0,  0,-20,-40,
+        -30,  0, 10, 15, 15, 10,  0,-30,
+        -30,  5, 15, 20, 20, 15,  5,-30,
+        -30,  0, 15, 20, 20, 15,  0,-30,
+        -30,  5, 10, 15, 15, 10,  5,-30,
+        -40,-20,  0,  5,  5,  0,-20,-40,
+        -50,-40,-30,-30,-30,-30,-40,-50};
+
+    private static final int[] BISHOP_TABLE = {
+        -20,-10,-10,-10,-10,-10,-10,-20,
+        -10,  0,  0,  0,  0,  0,  0,-10,
+        -10,  0,  5, 10, 10,  5,  0,-10,
+        -10,  5,  5, 10, 10,  5,  5,-10,
+        -10,  0, 10, 10, 10, 10,  0,-10,
+        -10, 10, 10, 10, 10, 10, 10,-10,
+        -10,  5,  0,  0,  0,  0,  5,-10,
+        -20,-10,-10,-10,-10,-10,-10,-20};
+
+    private static final int[] ROOK_TABLE = {
+          0,  0,  0,  0,  0,  0,  0,  0,
+          5, 10, 10, 10, 10, 10, 10,  5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+         -5,  0,  0,  0,  0,  0,  0, -5,
+          0,  0,  0,  5,  5,  0,  0,  0};
+
+    private static final int[] QUEEN_TABLE = {
+        -20,-10,-10, -5, -5,-10,-10,-20,
+        -10,  0,  0,  0,  0,  0,  0,-10,
+        -10,  0,  5,  5,  5,  5,  0,-10,
+         -5,  0,  5,  5,  5,  5,  0, -5,
+          0,  0,  5,  5,  5,  5,  0, -5,
+        -10,  5,  5,  5,  5,  5,  0,-10,
+        -10,  0,  5,  0,  0,  0,  0,-10,
+        -20,-10,-10, -5, -5,-10,-10,-20};
+
+    private static final int[] KING_MIDDLEGAME = {
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -30,-40,-40,-50,-50,-40,-40,-30,
+        -20,-30,-30,-40,-40,-30,-30,-20,
+        -10,-20,-20,-20,-20,-20,-20,-10,
+         20, 20,  0,  0,  0,  0, 20, 20,
+         20, 30, 10,  0,  0, 10, 30, 20};
+
+    private static final int[] PAWN_ENDGAME = {
+         0,  0,  0,  0,  0,  0,  0,  0,
+        80, 80, 80, 80, 80, 80, 80, 80,
+        50, 50, 50, 50, 50, 50, 50, 50,
+        30, 30, 30, 30, 30, 30, 30, 30,
+        15, 15, 15, 15, 15, 15, 15, 15,
+         5,  5,  5,  5,  5,  5,  5,  5,
+         0,  0,  0,  0,  0,  0,  0,  0,
+         0,  0,  0,  0,  0,  0,  0,  0};
+
+    private static final int[] KING_ENDGAME = {
+        -50,-40,-30,-20,-20,-30,-40,-50,
+        -30,-20,-10,  0,  0,-10,-20,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-30,  0,  0,  0,  0,-30,-30,
+        -50,-30,-30,-30,-30,-30,-30,-50};
+
+    // indexed by ChessPieceType ordinal, like PIECE_VALUES
+    private static final int[][] MIDDLEGAME_TABLES = {PAWN_MIDDLEGAME,
+        ROOK_TABLE, KNIGHT_TABLE, BISHOP_TABLE, QUEEN_TABLE, KING_MIDDLEGAME};
+    private static final int[][] ENDGAME_TABLES = {PAWN_ENDGAME, ROOK_TABLE,
+        KNIGHT_TABLE, BISHOP_TABLE, QUEEN_TABLE, KING_ENDGAME};
+
+    // [Bitboards.index][square], material included, black negated
+    private static final int[][] MIDDLEGAME = new int[12][64];
+    private static final int[][] ENDGAME = new int[12][64];
+
+    static {
+        for (Side side : Side.values()) {
+            for (ChessPiece.ChessPieceType type
+                    : ChessPiece.ChessPieceType.values()) {
+                int index = Bitboards.index(side, type);
+                int t = type.ordinal();
+                for (int sq = 0; sq < 64; sq++) {
+                    int tableSquare = side == Side.WHITE ? sq : sq ^ 56;
+                    int sign = side == Side.WHITE ? 1 : -1;
+                    MIDDLEGAME[index][sq] = sign * (PIECE_VALUES[t]
+                        + MIDDLEGAME_TABLES[t][tableSquare]);
+                    ENDGAME[index][sq] = sign * (PIECE_VALUES[t]
+                        + ENDGAME_TABLES[t][tableSquare]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param type a piece type
+     * @return its material value in centipawns, 0 for the king
+     */
+    public static int pieceValue(ChessPiece.ChessPieceType type) {
+        return PIECE_VALUES[type.ordinal()];
+    }
+
+    /**
+     * @param index a piece's bitboard index, see Bitboards.index
+     * @param square the square it stands on
+     * @return its middlegame value from white's point of view
+     */
+    public static int middlegame(int index, int square) {
+        return MIDDLEGAME[index][square];
+    }
+
+    /**
+     * @param index a piece's bitboard index, see Bitboards.index
+     * @param square the square it stands on
+     * @return its endgame value from white's point of view
+     */
+    public static int endgame(int index, int square) {
+        return ENDGAME[index][square];
+    }
+
+    /**
+     * @param index a piece's bitboard index, see Bitboards.index
+     * @return how much the piece counts towards the game phase
+     */
+    public static int phase(int index) {
+        return PHASE_WEIGHTS[index % Bitboards.PIECE_TYPES];
+    }
+}
@@ -1,6 +1,5 @@
 package model.chess;
 
-import java.util.HashSet;
 import java.util.Set;
 import model.Move;
 import model.Position;
@@ -23,25 +22,7 @@ public class Queen extends ChessPiece {
 
     @Override
     public Set<Move> generateMoves(Position curPos) {
-        Set<Move> moves = new HashSet<Move>();
-        int curCol = curPos.getCol();
-        int curRow = curPos.getRow();
-
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dy = -1; dy <= 1; dy++) {
-                if (dy != 0 || dx != 0) {
-                    int destCol = curCol + dx;
-                    int destRow = curRow + dy;
-                    while (ChessUtils.posBoundsTest(destRow, destCol)) {
-                        Position destPos = new Position(destRow, destCol);
-                        moves.add(new Move(curPos, destPos));
-
-                        destCol = destCol + dx;
-                        destRow = destRow + dy;
-                    }
-                }
-            }
-        }
-        return moves;
+        return movesTo(curPos, AttackTables.queenAttacks(
+                Bitboards.square(curPos), Bitboards.EMPTY), false);
     }
 }
@@ -0,0 +1,79 @@
+package model.chess;
+
+import model.Piece;
+import model.Side;
+
+/**
+ * Random keys for Zobrist hashing of chess positions. A position's hash is
+ * the XOR of the keys of every feature it has: each piece on its square,
+ * black to move, each castling right still held and the file of a pawn
+ * that can be taken en passant. Boards keep the hash up to date by XORing
+ * keys in and out as those features change.
+ *
+ * @author Joe
+ */
+public class Zobrist {
+
+    private static final long[][] PIECE_KEYS = new long[12][64];
+    private static final long[] KINGSIDE_KEYS = new long[2];
+    private static final long[] QUEENSIDE_KEYS = new long[2];
+    private static final long[] EN_PASSANT_KEYS = new long[8];
+    private static final long BLACK_TO_MOVE_KEY;
+
+    // fixed seed, so hashes are stable from one run to the next
+    private static long seed = 0x1331C0FFEE2015L;
+
+    static {
+        for (int i = 0; i < PIECE_KEYS.length; i++) {
+            for (int sq = 0; sq < 64; sq++) {
+                PIECE_KEYS[i][sq] = nextKey();
+            }
+        }
+        for (int side = 0; side < 2; side++) {
+            KINGSIDE_KEYS[side] = nextKey();
+            QUEENSIDE_KEYS[side] = nextKey();
+        }
+        for (int col = 0; col < 8; col++) {
+            EN_PASSANT_KEYS[col] = nextKey();
+        }
+        BLACK_TO_MOVE_KEY = nextKey();
+    }
+
+    /**
+     * @param p a chess piece
+     * @param square the square it stands on
+     * @return the key for that piece on that square
+     */
+    public static long piece(Piece p, int square) {
+        return PIECE_KEYS[Bitboards.index(p)][square];
+    }
+
+    public static long kingsideCastling(Side s) {
+        return KINGSIDE_KEYS[s.ordinal()];
+    }
+
+    public static long queensideCastling(Side s) {
+        return QUEENSIDE_KEYS[s.ordinal()];
+    }
+
+    /**
+     * @param col the column of the pawn that just advanced two rows
+     * @return the en passant key for that column
+     */
+    public static long enPassant(int col) {
+        return EN_PASSANT_KEYS[col];
+    }
+
+    public static long blackToMove() {
+        return BLACK_TO_MOVE_KEY;
+    }
+
+    // SplitMix64
+    private static long nextKey() {
+        seed += 0x9E3779B97F4A7C15L;
+        long z = seed;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
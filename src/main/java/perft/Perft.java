@@ -0,0 +1,212 @@
+package perft;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import model.chess.ChessBoard;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth. The totals
+ * for well known positions are published, so a wrong count points straight
+ * at a move generator bug, and the time taken measures generator speed.
+ *
+ * One Perft walks one board in place with make and unmake, keeping a move
+ * list and undo record per ply, so it is not thread safe. parallelPerft
+ * gives every task its own copy of the board. An optional PerftCache skips
+ * subtrees whose count is already known, and can be shared between tasks.
+ *
+ * @author Joe
+ */
+public class Perft {
+
+    private ChessBoard board;
+    private PerftCache cache;
+    private MoveList[] moveLists = new MoveList[0];
+    private ChessBoard.MoveUndo[] undos = new ChessBoard.MoveUndo[0];
+
+    public Perft(ChessBoard board) {
+        this(board, null);
+    }
+
+    /**
+     * @param board the board to walk, left unchanged between calls
+     * @param cache subtree counts to reuse, or null to count everything
+     */
+    public Perft(ChessBoard board, PerftCache cache) {
+        this.board = board;
+        this.cache = cache;
+    }
+
+    /**
+     * @param depth plies to search, 0 counts the position itself
+     * @return the number of positions reached after exactly depth plies
+     */
+    public long perft(int depth) {
+        ensureDepth(depth);
+        return count(depth);
+    }
+
+    /**
+     * Perft broken down by root move, in generation order. Comparing this
+     * with another program's divide output narrows a wrong total down to
+     * one move.
+     *
+     * @param depth plies to search, at least 1
+     * @return long algebraic root move to leaf count below it
+     */
+    public Map<String, Long> divide(int depth) {
+        ensureDepth(depth);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        MoveList moves = moveLists[depth];
+        board.generateMoves(board.getSideToMove(), moves);
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            board.makeMove(move, undos[depth]);
+            counts.put(PackedMove.toString(move), count(depth - 1));
+            board.unmakeMove(undos[depth]);
+        }
+        return counts;
+    }
+
+    /**
+     * Perft with the subtree under each root move counted as a separate
+     * task on pool.
+     *
+     * @param board the root position, left unchanged
+     * @param depth plies to search
+     * @param pool the pool to run the subtrees on
+     * @return the number of positions reached after exactly depth plies
+     */
+    public static long parallelPerft(ChessBoard board, int depth,
+            ForkJoinPool pool) {
+        return parallelPerft(board, depth, pool, null);
+    }
+
+    /**
+     * parallelPerft with every task sharing cache.
+     *
+     * @param board the root position, left unchanged
+     * @param depth plies to search
+     * @param pool the pool to run the subtrees on
+     * @param cache subtree counts to reuse, or null to count everything
+     * @return the number of positions reached after exactly depth plies
+     */
+    public static long parallelPerft(ChessBoard board, int depth,
+            ForkJoinPool pool, PerftCache cache) {
+        if (depth < 2) {
+            return new Perft(board.copy(), cache).perft(depth);
+        }
+        return pool.invoke(new RootTask(board.copy(), depth, cache));
+    }
+
+    private long count(int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+
+        if (cache != null && depth > 1) {
+            long cached = cache.get(board.hash(), depth);
+            if (cached >= 0) {
+                return cached;
+            }
+        }
+
+        MoveList moves = moveLists[depth];
+        board.generateMoves(board.getSideToMove(), moves);
+        if (depth == 1) {
+            // every legal move is a leaf, no need to play them
+            return moves.size();
+        }
+
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            board.makeMove(moves.get(i), undos[depth]);
+            nodes += count(depth - 1);
+            board.unmakeMove(undos[depth]);
+        }
+
+        if (cache != null) {
+            cache.put(board.hash(), depth, nodes);
+        }
+        return nodes;
+    }
+
+    private void ensureDepth(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth must be at least 0");
+        }
+        if (moveLists.length <= depth) {
+            moveLists = new MoveList[depth + 1];
+            undos = new ChessBoard.MoveUndo[depth + 1];
+            for (int i = 0; i <= depth; i++) {
+                moveLists[i] = new MoveList();
+                undos[i] = new ChessBoard.MoveUndo();
+            }
+        }
+    }
+
+    /**
+     * Forks one SubtreeTask per root move and adds up their counts.
+     */
+    private static class RootTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private ChessBoard board;
+        private int depth;
+        private PerftCache cache;
+
+        RootTask(ChessBoard board, int depth, PerftCache cache) {
+            this.board = board;
+            this.depth = depth;
+            this.cache = cache;
+        }
+
+        @Override
+        protected Long compute() {
+            MoveList moves = new MoveList();
+            board.generateMoves(board.getSideToMove(), moves);
+
+            SubtreeTask[] tasks = new SubtreeTask[moves.size()];
+            ChessBoard.MoveUndo undo = new ChessBoard.MoveUndo();
+            for (int i = 0; i < moves.size(); i++) {
+                board.makeMove(moves.get(i), undo);
+                tasks[i] = new SubtreeTask(board.copy(), depth - 1, cache);
+                board.unmakeMove(undo);
+                tasks[i].fork();
+            }
+
+            long nodes = 0;
+            for (SubtreeTask task : tasks) {
+                nodes += task.join();
+            }
+            return nodes;
+        }
+    }
+
+    /**
+     * Counts one subtree sequentially on its own board.
+     */
+    private static class SubtreeTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private ChessBoard board;
+        private int depth;
+        private PerftCache cache;
+
+        SubtreeTask(ChessBoard board, int depth, PerftCache cache) {
+            this.board = board;
+            this.depth = depth;
+            this.cache = cache;
+        }
+
+        @Override
+        protected Long compute() {
+            return new Perft(board, cache).perft(depth);
+        }
+    }
+}
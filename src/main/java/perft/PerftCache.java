@@ -0,0 +1,98 @@
+package perft;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size table of perft counts keyed by position hash and remaining
+ * depth, shared by every perft worker without locks.
+ *
+ * Each slot is two longs in one array: the key XORed with the data, and the
+ * data itself, where the data packs the count and the depth. Threads read
+ * and write slots without synchronising, so a reader can see half of one
+ * entry and half of another. Such a torn slot fails the XOR check and is
+ * treated as a miss, which keeps the table correct without locks. Newer
+ * entries always replace older ones.
+ *
+ * @author Joe
+ */
+public class PerftCache {
+
+    private static final int DEPTH_BITS = 6;
+    private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+
+    private final long[] table;
+    private final int slotMask;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * @param megabytes table size, rounded down to a power of two number of
+     * slots
+     */
+    public PerftCache(int megabytes) {
+        long slots = Long.highestOneBit(
+                Math.max(1, megabytes * 1024L * 1024L / 16));
+        if (slots > 1 << 29) {
+            throw new IllegalArgumentException("perft cache too large");
+        }
+        table = new long[(int) slots * 2];
+        slotMask = (int) slots - 1;
+    }
+
+    /**
+     * @param hash the position's Zobrist hash
+     * @param depth the remaining depth
+     * @return the stored count, or -1 if there is none
+     */
+    public long get(long hash, int depth) {
+        probes.increment();
+        int i = index(hash, depth);
+        long data = table[i + 1];
+        if ((table[i] ^ data) == hash && (data & DEPTH_MASK) == depth) {
+            hits.increment();
+            return data >>> DEPTH_BITS;
+        }
+        return -1;
+    }
+
+    public void put(long hash, int depth, long count) {
+        int i = index(hash, depth);
+        long data = (count << DEPTH_BITS) | depth;
+        table[i] = hash ^ data;
+        table[i + 1] = data;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the fraction of lookups that found a count, 0 before any
+     */
+    public double getHitRate() {
+        long p = probes.sum();
+        return p == 0 ? 0 : (double) hits.sum() / p;
+    }
+
+    public int getSlots() {
+        return slotMask + 1;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0L);
+        probes.reset();
+        hits.reset();
+    }
+
+    // the same position at different depths goes to different slots
+    private int index(long hash, int depth) {
+        long h = hash ^ (depth * 0x9E3779B97F4A7C15L);
+        return ((int) (h ^ (h >>> 32)) & slotMask) << 1;
+    }
+}
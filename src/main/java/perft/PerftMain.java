@@ -0,0 +1,159 @@
+package perft;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import model.chess.ChessBoard;
+import model.chess.EpdReader;
+
+/**
+ * Command line perft runner, no display needed.
+ *
+ * Usage: PerftMain depth [--divide] [--threads n] [--hash mb]
+ *     [--fen fen | --epd file]
+ *
+ * Prints the count for every depth from 1 up to depth, or the per move
+ * breakdown at depth with --divide, together with the time taken and nodes
+ * per second. --threads n counts root subtrees in parallel on n threads.
+ * --hash mb caches subtree counts in a PerftCache of that size and reports
+ * its hit rate. --fen starts from the given position instead of the usual
+ * one.
+ *
+ * --epd runs a perft suite: every record's "D1 20 ;D2 400 ..." operations
+ * up to depth are checked, mismatches are printed, and the exit status is
+ * 1 if there were any, so the suite can run as a regression job.
+ *
+ * @author Joe
+ */
+public class PerftMain {
+
+    private static final String USAGE =
+        "usage: PerftMain depth [--divide] [--threads n] [--hash mb]"
+        + " [--fen fen | --epd file]";
+
+    public static void main(String[] args) throws IOException {
+        int depth = -1;
+        boolean divide = false;
+        int threads = 1;
+        int hashMegabytes = 0;
+        String fen = null;
+        String epd = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--divide")) {
+                    divide = true;
+                } else if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--hash")) {
+                    hashMegabytes = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--fen")) {
+                    fen = args[++i];
+                } else if (args[i].equals("--epd")) {
+                    epd = args[++i];
+                } else {
+                    depth = Integer.parseInt(args[i]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            depth = -1;
+        }
+        if (depth < 1 || threads < 1 || hashMegabytes < 0) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        ChessBoard board = fen != null ? new ChessBoard(fen) : new ChessBoard();
+        PerftCache cache = hashMegabytes > 0
+            ? new PerftCache(hashMegabytes)
+            : null;
+        if (epd != null) {
+            boolean passed = runSuite(epd, depth, board, cache);
+            reportCache(cache);
+            System.exit(passed ? 0 : 1);
+        }
+        if (divide) {
+            long start = System.nanoTime();
+            Map<String, Long> counts = new Perft(board, cache).divide(depth);
+            long elapsed = System.nanoTime() - start;
+
+            long total = 0;
+            for (Map.Entry<String, Long> e : counts.entrySet()) {
+                System.out.println(e.getKey() + ": " + e.getValue());
+                total += e.getValue();
+            }
+            System.out.println();
+            System.out.println("moves: " + counts.size());
+            report(depth, total, elapsed);
+            reportCache(cache);
+            return;
+        }
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        Perft perft = new Perft(board, cache);
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long nodes = pool != null
+                ? Perft.parallelPerft(board, d, pool, cache)
+                : perft.perft(d);
+            report(d, nodes, System.nanoTime() - start);
+        }
+        reportCache(cache);
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Checks every Dn count up to maxDepth in an EPD perft suite.
+     *
+     * @return whether all counts matched
+     */
+    private static boolean runSuite(String file, int maxDepth,
+            ChessBoard board, PerftCache cache) throws IOException {
+        Perft perft = new Perft(board, cache);
+        int positions = 0;
+        int failures = 0;
+        long nodes = 0;
+        long start = System.nanoTime();
+        try (EpdReader reader = new EpdReader(new FileReader(file))) {
+            while (reader.next(board)) {
+                positions++;
+                for (int d = 1; d <= maxDepth; d++) {
+                    String expected = reader.getOperation("D" + d);
+                    if (expected == null) {
+                        continue;
+                    }
+                    long count = perft.perft(d);
+                    nodes += count;
+                    if (count != Long.parseLong(expected)) {
+                        failures++;
+                        System.out.println("line " + reader.getLineNumber()
+                                + " depth " + d + ": expected " + expected
+                                + ", got " + count + "  " + board.toFen());
+                    }
+                }
+            }
+        }
+        System.out.println(positions + " positions, " + failures
+                + " failures");
+        report(maxDepth, nodes, System.nanoTime() - start);
+        return failures == 0;
+    }
+
+    private static void report(int depth, long nodes, long nanos) {
+        long millis = nanos / 1000000;
+        long nodesPerSecond = nanos > 0 ? (long) (nodes * 1e9 / nanos) : 0;
+        System.out.println("depth " + depth + ": " + nodes + " nodes, "
+                + millis + " ms, " + nodesPerSecond + " nps");
+    }
+
+    private static void reportCache(PerftCache cache) {
+        if (cache != null) {
+            System.out.printf("hash: %d slots, %d probes, %.1f%% hits%n",
+                    cache.getSlots(), cache.getProbes(),
+                    cache.getHitRate() * 100);
+        }
+    }
+}
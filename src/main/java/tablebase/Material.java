@@ -0,0 +1,286 @@
+package tablebase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import model.Side;
+import model.chess.ChessPiece;
+import model.chess.PieceSquareTables;
+
+/**
+ * The pieces a tablebase covers, named the usual way: white's pieces, a v,
+ * then black's, strongest first, like KQvKR.
+ *
+ * The order of the name is also the order of a table's pieces: the white
+ * king, the black king, then white's other pieces and black's other pieces,
+ * each strongest first. A position's index in the table puts the square of
+ * piece i in bits 6i to 6i + 5.
+ *
+ * Only one of a material and its colour-swapped twin gets a table, the
+ * canonical one, which gives white the stronger pieces. A KRvKQ position is
+ * looked up in KQvKR by mirroring the board and swapping the colours.
+ *
+ * Materials have at most MAX_PIECES pieces and three of any one kind: a
+ * table grows 64 times over with every piece, and the material key
+ * Tablebases looks tables up by counts each kind in two bits.
+ *
+ * @author Joe
+ */
+public class Material {
+
+    /**
+     * The most pieces, kings included, a material may have.
+     */
+    public static final int MAX_PIECES = 4;
+
+    private static final String LETTERS = "PRNBQK";
+    // strongest first, by ChessPieceType ordinal: PAWN, ROOK, KNIGHT,
+    // BISHOP, QUEEN, KING
+    private static final int[] RANK = {4, 1, 3, 2, 0, -1};
+    private static final int MAX_OF_A_KIND = 3;
+
+    private final Side[] sides;
+    private final ChessPiece.ChessPieceType[] types;
+    private final String name;
+
+    /**
+     * @param sides the side of each piece, in any order
+     * @param types the type of each piece
+     * @throws IllegalArgumentException if there are more than MAX_PIECES
+     * pieces or more than three of a kind
+     */
+    Material(List<Side> sides, List<ChessPiece.ChessPieceType> types) {
+        int count = sides.size();
+        int[] kinds = new int[2 * LETTERS.length()];
+        for (int i = 0; i < count; i++) {
+            int kind = sides.get(i).ordinal() * LETTERS.length()
+                + types.get(i).ordinal();
+            if (++kinds[kind] > MAX_OF_A_KIND) {
+                throw new IllegalArgumentException("more than "
+                        + MAX_OF_A_KIND + " of a kind in a material");
+            }
+        }
+        if (count > MAX_PIECES) {
+            throw new IllegalArgumentException("more than " + MAX_PIECES
+                    + " pieces in a material");
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> sortKey(sides.get(a), types.get(a))
+                - sortKey(sides.get(b), types.get(b)));
+
+        this.sides = new Side[count];
+        this.types = new ChessPiece.ChessPieceType[count];
+        for (int i = 0; i < count; i++) {
+            this.sides[i] = sides.get(order[i]);
+            this.types[i] = types.get(order[i]);
+        }
+        this.name = sideName(Side.WHITE) + "v" + sideName(Side.BLACK);
+    }
+
+    /**
+     * @param name a material like KQvKR
+     * @return it, canonical or not
+     * @throws IllegalArgumentException if the name is not a material or
+     * has too many pieces
+     */
+    public static Material parse(String name) {
+        String[] parts = name.toUpperCase().split("V", -1);
+        if (parts.length != 2 || !parts[0].startsWith("K")
+                || !parts[1].startsWith("K")) {
+            throw new IllegalArgumentException("not a material: " + name);
+        }
+        List<Side> sides = new ArrayList<>();
+        List<ChessPiece.ChessPieceType> types = new ArrayList<>();
+        for (Side side : Side.values()) {
+            String pieces = parts[side.ordinal()];
+            for (int i = 0; i < pieces.length(); i++) {
+                int letter = LETTERS.indexOf(pieces.charAt(i));
+                boolean king = letter == LETTERS.length() - 1;
+                if (letter < 0 || king != (i == 0)) {
+                    throw new IllegalArgumentException(
+                            "not a material: " + name);
+                }
+                sides.add(side);
+                types.add(ChessPiece.ChessPieceType.values()[letter]);
+            }
+        }
+        return new Material(sides, types);
+    }
+
+    /**
+     * Every canonical material with the given number of pieces or fewer,
+     * kings included, that a generator needs to cover them all.
+     *
+     * @param pieces 2 to MAX_PIECES
+     * @return the materials, fewest pieces first
+     * @throws IllegalArgumentException if pieces is out of range
+     */
+    public static List<Material> upTo(int pieces) {
+        if (pieces < 2 || pieces > MAX_PIECES) {
+            throw new IllegalArgumentException("materials have 2 to "
+                    + MAX_PIECES + " pieces, not " + pieces);
+        }
+        Set<String> names = new TreeSet<>((a, b) -> a.length() != b.length()
+                ? a.length() - b.length() : a.compareTo(b));
+        addAll(names, "K", "K", pieces - 2);
+        List<Material> all = new ArrayList<>();
+        for (String name : names) {
+            all.add(parse(name));
+        }
+        return all;
+    }
+
+    private static void addAll(Set<String> names, String white, String black,
+            int more) {
+        names.add(parse(white + "v" + black).canonical().getName());
+        if (more == 0) {
+            return;
+        }
+        // add pieces in name order only, so each set is built once
+        for (int i = 0; i < 5; i++) {
+            char c = "QRBNP".charAt(i);
+            if ("QRBNP".indexOf(white.charAt(white.length() - 1)) <= i) {
+                addAll(names, white + c, black, more - 1);
+            }
+            if ("QRBNP".indexOf(black.charAt(black.length() - 1)) <= i) {
+                addAll(names, white, black + c, more - 1);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPieceCount() {
+        return sides.length;
+    }
+
+    public Side getSide(int piece) {
+        return sides[piece];
+    }
+
+    public ChessPiece.ChessPieceType getType(int piece) {
+        return types[piece];
+    }
+
+    /**
+     * @return the number of entries in the table for one side to move
+     */
+    public int size() {
+        return 1 << (6 * sides.length);
+    }
+
+    /**
+     * @return whether this is the one of the colour-swapped pair that gets
+     * a table
+     */
+    public boolean isCanonical() {
+        return compareSides() >= 0;
+    }
+
+    /**
+     * @return this with the colours swapped
+     */
+    public Material flipped() {
+        List<Side> flippedSides = new ArrayList<>();
+        for (Side side : sides) {
+            flippedSides.add(side == Side.WHITE ? Side.BLACK : Side.WHITE);
+        }
+        return new Material(flippedSides, Arrays.asList(types));
+    }
+
+    /**
+     * @return this or its colour-swapped twin, whichever gets a table
+     */
+    public Material canonical() {
+        return isCanonical() ? this : flipped();
+    }
+
+    /**
+     * @param captured a piece other than a king, or -1
+     * @param promoted a pawn, or -1
+     * @param type what promoted becomes
+     * @return the material once captured has been taken and promoted has
+     * promoted
+     */
+    Material after(int captured, int promoted,
+            ChessPiece.ChessPieceType type) {
+        List<Side> s = new ArrayList<>();
+        List<ChessPiece.ChessPieceType> t = new ArrayList<>();
+        for (int i = 0; i < sides.length; i++) {
+            if (i != captured) {
+                s.add(sides[i]);
+                t.add(i == promoted ? type : types[i]);
+            }
+        }
+        return new Material(s, t);
+    }
+
+    /**
+     * @param side a side
+     * @param type a piece type
+     * @return where pieces sort in a table's order, kings first
+     */
+    static int sortKey(Side side, ChessPiece.ChessPieceType type) {
+        return type == ChessPiece.ChessPieceType.KING
+            ? side.ordinal()
+            : 2 + 5 * side.ordinal() + RANK[type.ordinal()];
+    }
+
+    // positive if white is stronger: more material, then more pieces, then
+    // the stronger pieces first
+    private int compareSides() {
+        int[] value = new int[2];
+        for (int i = 0; i < sides.length; i++) {
+            value[sides[i].ordinal()] +=
+                PieceSquareTables.pieceValue(types[i]);
+        }
+        if (value[0] != value[1]) {
+            return value[0] - value[1];
+        }
+        String white = sideName(Side.WHITE);
+        String black = sideName(Side.BLACK);
+        if (white.length() != black.length()) {
+            return white.length() - black.length();
+        }
+        for (int i = 0; i < white.length(); i++) {
+            int w = "KQRBNP".indexOf(white.charAt(i));
+            int b = "KQRBNP".indexOf(black.charAt(i));
+            if (w != b) {
+                return b - w;
+            }
+        }
+        return 0;
+    }
+
+    private String sideName(Side side) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < sides.length; i++) {
+            if (sides[i] == side) {
+                s.append(LETTERS.charAt(types[i].ordinal()));
+            }
+        }
+        return s.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Material && ((Material) o).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,169 @@
+package tablebase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import model.Side;
+
+/**
+ * The game-theoretic value of every position of one Material, by side to
+ * move and Material index, one byte each: 0 for a draw, n + 1 if the side
+ * to move mates in n plies with best play and -(n + 1) if it gets mated in
+ * n plies. That is depth to mate, from which win, draw or loss follows, and
+ * it tops out at 126 plies.
+ *
+ * The file holds a small header, "JCTB", a version byte and the material's
+ * name, then the white to move values and the black to move values. Tables
+ * read from disk are memory-mapped, so only the pages a search actually
+ * probes are ever loaded.
+ *
+ * Positions are without castling rights or en passant captures. Illegal
+ * entries, pieces on top of each other and the like, read as draws.
+ *
+ * @author Joe
+ */
+public class Tablebase {
+
+    public static final int DRAW = 0;
+    public static final int MAX_DISTANCE = 126;
+
+    private static final byte[] MAGIC =
+        "JCTB".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    private final Material material;
+    // by Side ordinal
+    private final ByteBuffer[] values;
+
+    /**
+     * @param material what the table covers
+     * @param white the white to move values, Material.size() bytes
+     * @param black the black to move values
+     */
+    Tablebase(Material material, ByteBuffer white, ByteBuffer black) {
+        this.material = material;
+        this.values = new ByteBuffer[] {white, black};
+    }
+
+    /**
+     * @return the value meaning the side to move mates in plies
+     */
+    public static int win(int plies) {
+        return plies + 1;
+    }
+
+    /**
+     * @return the value meaning the side to move is mated in plies
+     */
+    public static int loss(int plies) {
+        return -plies - 1;
+    }
+
+    /**
+     * @param value a table value other than DRAW
+     * @return how many plies until mate
+     */
+    public static int distance(int value) {
+        return Math.abs(value) - 1;
+    }
+
+    /**
+     * Maps a table file.
+     *
+     * @param file the file
+     * @return the table
+     * @throws IOException if it cannot be read or is not a table
+     */
+    public static Tablebase map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 2);
+            readFully(channel, header, 0);
+            byte[] magic = new byte[MAGIC.length];
+            header.flip();
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)
+                    || header.get() != VERSION) {
+                throw new IOException(file + " is not a tablebase file");
+            }
+            ByteBuffer name = ByteBuffer.allocate(header.get());
+            readFully(channel, name, header.limit());
+            Material material = Material.parse(new String(name.array(),
+                    StandardCharsets.US_ASCII));
+
+            long start = header.limit() + name.limit();
+            long size = material.size();
+            if (channel.size() != start + 2 * size) {
+                throw new IOException(file + " has the wrong size for "
+                        + material);
+            }
+            // the mappings outlive the channel
+            return new Tablebase(material,
+                    channel.map(FileChannel.MapMode.READ_ONLY, start, size),
+                    channel.map(FileChannel.MapMode.READ_ONLY, start + size,
+                        size));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + " names no material", e);
+        }
+    }
+
+    /**
+     * Writes the table to a file, replacing any already there.
+     *
+     * @param file the file
+     * @throws IOException if it cannot be written
+     */
+    public void write(Path file) throws IOException {
+        byte[] name = material.getName().getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 2
+                + name.length);
+        header.put(MAGIC).put((byte) VERSION).put((byte) name.length)
+            .put(name).flip();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (ByteBuffer side : values) {
+                writeFully(channel, side.duplicate());
+            }
+        }
+    }
+
+    public Material getMaterial() {
+        return material;
+    }
+
+    /**
+     * @param toMove the side to move
+     * @param index the position's Material index
+     * @return its value, see the class comment
+     */
+    public int get(Side toMove, int index) {
+        return values[toMove.ordinal()].get(index);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer,
+            long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of tablebase file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return material.toString();
+    }
+}
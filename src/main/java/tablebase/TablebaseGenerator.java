@@ -0,0 +1,689 @@
+package tablebase;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import model.Side;
+import model.chess.AttackTables;
+import model.chess.Bitboards;
+import model.chess.ChessPiece;
+
+/**
+ * Builds Tablebase tables by retrograde analysis, working backwards from
+ * the mates.
+ *
+ * Every position starts unresolved. Mates are lost in 0, and a capture or
+ * promotion leaves the table for a smaller one that is already known, so
+ * such moves have their value from the start. Then, for d = 0, 1, 2 and so
+ * on, every position resolved at distance d is taken back one move: a
+ * position with a move into a loss in d is a win in d + 1, and a position
+ * with a move into a win in d is checked for whether all of its moves now
+ * lead to wins, which makes it a loss. Whatever is never resolved is a
+ * draw.
+ *
+ * Table positions have no en passant capture, but a double push can give
+ * one to the other side. Such a move is worth the better, for the side that
+ * can take, of the position it reaches as stored and of the capture, which
+ * leaves for a smaller table; the capture alone if it is the only reply.
+ * analyse scores the move that way and retract takes it back that way.
+ *
+ * Each pass over the table is split into ranges that run in parallel on a
+ * ForkJoinPool. A pass only writes values at distance d + 1 while reading
+ * those at distance d, so the ranges need no locking.
+ *
+ * Tables for the materials a capture or promotion leads to are generated
+ * first, and added to the Tablebases given to the constructor along with
+ * the table asked for.
+ *
+ * @author Joe
+ */
+public class TablebaseGenerator {
+
+    private static final ChessPiece.ChessPieceType[] PROMOTIONS = {
+        ChessPiece.ChessPieceType.QUEEN, ChessPiece.ChessPieceType.ROOK,
+        ChessPiece.ChessPieceType.BISHOP, ChessPiece.ChessPieceType.KNIGHT};
+
+    private static final Side[] SIDES = Side.values();
+    // entries no game can reach, only while generating
+    private static final byte ILLEGAL = Byte.MIN_VALUE;
+    // what enPassant answers when the pawn cannot be taken
+    private static final int NO_EN_PASSANT = Integer.MIN_VALUE;
+    // indexes per task
+    private static final int CHUNK = 1 << 14;
+
+    private final Tablebases known;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param known tables already available, which new ones are added to
+     * @param pool the pool to run the passes on
+     */
+    public TablebaseGenerator(Tablebases known, ForkJoinPool pool) {
+        this.known = known;
+        this.pool = pool;
+    }
+
+    /**
+     * Generates a table, and first any it depends on, unless they are known
+     * already.
+     *
+     * @param material a material
+     * @return the table for it, or for its canonical twin
+     */
+    public Tablebase generate(Material material) {
+        material = material.canonical();
+        Tablebase table = known.get(material);
+        if (table != null) {
+            return table;
+        }
+        int pieces = material.getPieceCount();
+        // every capture, promotion and capturing promotion
+        for (int captured = -1; captured < pieces; captured++) {
+            for (int promoted = -1; promoted < pieces; promoted++) {
+                if (captured == 0 || captured == 1 || promoted == captured
+                        || (captured < 0 && promoted < 0)
+                        || (promoted >= 0 && (material.getType(promoted)
+                            != ChessPiece.ChessPieceType.PAWN
+                            || captured >= 0 && material.getSide(captured)
+                                == material.getSide(promoted)))) {
+                    continue;
+                }
+                for (ChessPiece.ChessPieceType type : PROMOTIONS) {
+                    generate(material.after(captured, promoted, type));
+                    if (promoted < 0) {
+                        break;
+                    }
+                }
+            }
+        }
+        table = new Generation(material).run();
+        known.add(table);
+        return table;
+    }
+
+    // one table being generated
+    private class Generation {
+        final Material material;
+        final int pieces;
+        final Side[] sides;
+        final ChessPiece.ChessPieceType[] types;
+        final int size;
+        // by Side ordinal then index: the value once resolved, a value to
+        // take at its distance, and whether to check for a loss
+        final byte[][] values;
+        final byte[][] scheduled;
+        final byte[][] candidates;
+        final AtomicInteger lastScheduled = new AtomicInteger();
+
+        Generation(Material material) {
+            this.material = material;
+            pieces = material.getPieceCount();
+            sides = new Side[pieces];
+            types = new ChessPiece.ChessPieceType[pieces];
+            for (int i = 0; i < pieces; i++) {
+                sides[i] = material.getSide(i);
+                types[i] = material.getType(i);
+            }
+            size = material.size();
+            values = new byte[2][size];
+            scheduled = new byte[2][size];
+            candidates = new byte[2][size];
+        }
+
+        Tablebase run() {
+            pass((from, to) -> new Worker().initialise(from, to));
+            for (int d = 0;; d++) {
+                final int distance = d;
+                if (d > 0) {
+                    pass((from, to) -> new Worker().resolve(from, to,
+                            distance));
+                }
+                LongAdder found = new LongAdder();
+                pass((from, to) -> found.add(new Worker().retract(from, to,
+                        distance)));
+                if (found.sum() == 0 && d >= lastScheduled.get()) {
+                    break;
+                }
+            }
+            pass((from, to) -> {
+                for (byte[] side : values) {
+                    for (int i = from; i < to; i++) {
+                        if (side[i] == ILLEGAL) {
+                            side[i] = Tablebase.DRAW;
+                        }
+                    }
+                }
+            });
+            return new Tablebase(material, ByteBuffer.wrap(values[0]),
+                    ByteBuffer.wrap(values[1]));
+        }
+
+        void pass(Range range) {
+            pool.invoke(new PassTask(range, 0, size));
+        }
+
+        // schedules a win unless a sooner one already is; retract ranges
+        // running in parallel can reach the same position
+        synchronized void scheduleWin(int side, int index, int value) {
+            int current = scheduled[side][index];
+            if (current == 0 || current > 0 && Tablebase.distance(current)
+                    > Tablebase.distance(value)) {
+                schedule(side, index, value);
+            }
+        }
+
+        void schedule(int side, int index, int value) {
+            int distance = Tablebase.distance(value);
+            if (distance > Tablebase.MAX_DISTANCE) {
+                throw new IllegalStateException(material
+                        + " has mates too long for the table format");
+            }
+            scheduled[side][index] = (byte) value;
+            lastScheduled.accumulateAndGet(distance, Math::max);
+        }
+
+        // the per thread part of a pass, with its own scratch space
+        private class Worker {
+            final int[] squares = new int[pieces];
+            final int[] exitSquares = new int[pieces];
+            final int[] exitOrder = new int[pieces];
+
+            // summary of the moves of a position, see analyse
+            int moves;
+            int inTableMoves;
+            int shortestLoss;
+            int longestWin;
+            boolean allWins;
+
+            // marks illegal positions, mates and stalemates, and schedules
+            // what captures and promotions decide
+            void initialise(int from, int to) {
+                for (int index = from; index < to; index++) {
+                    decode(index);
+                    for (int s = 0; s < 2; s++) {
+                        if (!isLegal(s)) {
+                            values[s][index] = ILLEGAL;
+                            continue;
+                        }
+                        analyse(s, false);
+                        if (moves == 0) {
+                            values[s][index] = (byte) (inCheck(s)
+                                ? Tablebase.loss(0) : Tablebase.DRAW);
+                        } else if (shortestLoss != Integer.MAX_VALUE) {
+                            schedule(s, index,
+                                    Tablebase.win(shortestLoss + 1));
+                        } else if (inTableMoves == 0 && allWins) {
+                            schedule(s, index,
+                                    Tablebase.loss(longestWin + 1));
+                        }
+                    }
+                }
+            }
+
+            // settles the positions that are won or lost at distance
+            void resolve(int from, int to, int distance) {
+                for (int index = from; index < to; index++) {
+                    for (int s = 0; s < 2; s++) {
+                        if (values[s][index] != 0) {
+                            continue;
+                        }
+                        int value = scheduled[s][index];
+                        if (value != 0
+                                && Tablebase.distance(value) == distance) {
+                            values[s][index] = (byte) value;
+                        } else if (candidates[s][index] != 0) {
+                            candidates[s][index] = 0;
+                            decode(index);
+                            analyse(s, true);
+                            if (moves == 0 || !allWins) {
+                                continue;
+                            }
+                            if (longestWin == distance - 1) {
+                                values[s][index] =
+                                    (byte) Tablebase.loss(distance);
+                            } else if (longestWin >= distance) {
+                                schedule(s, index,
+                                        Tablebase.loss(longestWin + 1));
+                            }
+                        }
+                    }
+                }
+            }
+
+            // takes back a move from every position resolved at distance,
+            // returning how many there were
+            int retract(int from, int to, int distance) {
+                int found = 0;
+                for (int index = from; index < to; index++) {
+                    for (int s = 0; s < 2; s++) {
+                        int value = values[s][index];
+                        if (value == 0 || value == ILLEGAL
+                                || Tablebase.distance(value) != distance) {
+                            continue;
+                        }
+                        found++;
+                        decode(index);
+                        retract(s, value < 0, distance);
+                    }
+                }
+                return found;
+            }
+
+            // a position with s to move is lost, or won, at distance: the
+            // positions one move earlier win, or might lose
+            void retract(int s, boolean lost, int distance) {
+                int p = 1 - s;
+                long occupied = occupancy();
+                for (int i = 0; i < pieces; i++) {
+                    if (sides[i] != SIDES[p]) {
+                        continue;
+                    }
+                    int to = squares[i];
+                    long origins = types[i] == ChessPiece.ChessPieceType.PAWN
+                        ? pawnOrigins(SIDES[p], to, occupied)
+                        : AttackTables.attacks(types[i], SIDES[p], to,
+                            occupied) & ~occupied;
+                    while (origins != Bitboards.EMPTY) {
+                        int from = Bitboards.lowestSquare(origins);
+                        origins &= origins - 1;
+                        squares[i] = from;
+                        long before = occupied ^ Bitboards.bit(to)
+                            ^ Bitboards.bit(from);
+                        if (!attacked(squares[king(s)], p, before, -1)) {
+                            int index = index();
+                            if (values[p][index] == 0) {
+                                squares[i] = to;
+                                int value = reached(s, i, from, lost
+                                    ? Tablebase.loss(distance)
+                                    : Tablebase.win(distance));
+                                squares[i] = from;
+                                if (value > 0) {
+                                    candidates[p][index] = 1;
+                                } else if (value < 0) {
+                                    win(p, index, distance,
+                                            Tablebase.distance(value) + 1);
+                                }
+                            }
+                        }
+                        squares[i] = to;
+                    }
+                }
+            }
+
+            // what a position worth value to s to move is worth as reached
+            // by the other side moving piece i there from from, see the
+            // class comment
+            int reached(int s, int i, int from, int value) {
+                if (types[i] != ChessPiece.ChessPieceType.PAWN
+                        || Math.abs(squares[i] - from) != 16) {
+                    return value;
+                }
+                int enPassant = enPassant(1 - s, i);
+                if (enPassant == NO_EN_PASSANT) {
+                    return value;
+                }
+                return hasMove(s) ? better(value, enPassant) : enPassant;
+            }
+
+            // p wins in plies, found while taking back moves from distance
+            void win(int p, int index, int distance, int plies) {
+                if (plies > distance + 1) {
+                    // only through en passant, see reached
+                    scheduleWin(p, index, Tablebase.win(plies));
+                } else if (distance < Tablebase.MAX_DISTANCE) {
+                    values[p][index] = (byte) Tablebase.win(distance + 1);
+                } else {
+                    throw new IllegalStateException(material
+                        + " has mates too long for the table format");
+                }
+            }
+
+            // plays every legal move with s to move and sums up where they
+            // lead; moves staying in the table count only if inTable
+            void analyse(int s, boolean inTable) {
+                moves = 0;
+                inTableMoves = 0;
+                shortestLoss = Integer.MAX_VALUE;
+                longestWin = -1;
+                allWins = true;
+
+                Side side = SIDES[s];
+                long occupied = occupancy();
+                long own = occupancy(s);
+                for (int i = 0; i < pieces; i++) {
+                    if (sides[i] != side) {
+                        continue;
+                    }
+                    int from = squares[i];
+                    boolean pawn = types[i] == ChessPiece.ChessPieceType.PAWN;
+                    long targets = pawn
+                        ? pawnTargets(side, from, occupied, occupied & ~own)
+                        : AttackTables.attacks(types[i], side, from,
+                            occupied) & ~own;
+                    while (targets != Bitboards.EMPTY) {
+                        int to = Bitboards.lowestSquare(targets);
+                        targets &= targets - 1;
+                        int captured = pieceAt(to);
+                        long after = (occupied | Bitboards.bit(to))
+                            ^ Bitboards.bit(from);
+                        squares[i] = to;
+                        if (!attacked(squares[king(s)], 1 - s, after,
+                                captured)) {
+                            int row = Bitboards.row(to);
+                            if (pawn && (row == 0 || row == 7)) {
+                                for (ChessPiece.ChessPieceType type
+                                        : PROMOTIONS) {
+                                    moves++;
+                                    count(exit(s, captured, i, type));
+                                }
+                            } else if (captured >= 0) {
+                                moves++;
+                                count(exit(s, captured, -1, null));
+                            } else {
+                                moves++;
+                                int enPassant = pawn
+                                    && Math.abs(to - from) == 16
+                                    ? enPassant(s, i) : NO_EN_PASSANT;
+                                if (enPassant != NO_EN_PASSANT
+                                        && !hasMove(1 - s)) {
+                                    // the capture is the only reply
+                                    count(enPassant);
+                                } else if (inTable) {
+                                    inTableMoves++;
+                                    int value = values[1 - s][index()];
+                                    count(enPassant == NO_EN_PASSANT
+                                        ? value : better(value, enPassant));
+                                } else if (enPassant > 0) {
+                                    // a win for the other side however the
+                                    // stored value turns out, at most this
+                                    // far off; resolve shortens it if need be
+                                    count(enPassant);
+                                } else {
+                                    inTableMoves++;
+                                }
+                            }
+                        }
+                        squares[i] = from;
+                    }
+                }
+            }
+
+            // the value, for the other side to move, of taking s's pawn i en
+            // passant right after its double push, the better capture if
+            // two pawns can, or NO_EN_PASSANT if none legally can
+            int enPassant(int s, int i) {
+                int o = 1 - s;
+                int to = squares[i];
+                // white moves towards row 0
+                int passed = to + (SIDES[s] == Side.WHITE ? 8 : -8);
+                long occupied = occupancy();
+                int best = NO_EN_PASSANT;
+                for (int j = 0; j < pieces; j++) {
+                    int from = squares[j];
+                    if (sides[j] != SIDES[o]
+                            || types[j] != ChessPiece.ChessPieceType.PAWN
+                            || Bitboards.row(from) != Bitboards.row(to)
+                            || Math.abs(Bitboards.col(from)
+                                - Bitboards.col(to)) != 1) {
+                        continue;
+                    }
+                    long after = occupied ^ Bitboards.bit(from)
+                        ^ Bitboards.bit(to) | Bitboards.bit(passed);
+                    squares[j] = passed;
+                    if (!attacked(squares[king(o)], s, after, i)) {
+                        // s to move in the smaller table
+                        int value = exit(o, i, -1, null);
+                        if (value == Tablebases.NOT_FOUND) {
+                            throw new IllegalStateException("a table "
+                                    + material + " needs is missing");
+                        }
+                        int taking = value < 0
+                            ? Tablebase.win(Tablebase.distance(value) + 1)
+                            : value > 0
+                            ? Tablebase.loss(Tablebase.distance(value) + 1)
+                            : Tablebase.DRAW;
+                        best = best == NO_EN_PASSANT
+                            ? taking : better(best, taking);
+                    }
+                    squares[j] = from;
+                }
+                return best;
+            }
+
+            // whether s to move has a legal move other than en passant
+            boolean hasMove(int s) {
+                Side side = SIDES[s];
+                long occupied = occupancy();
+                long own = occupancy(s);
+                for (int i = 0; i < pieces; i++) {
+                    if (sides[i] != side) {
+                        continue;
+                    }
+                    int from = squares[i];
+                    long targets = types[i] == ChessPiece.ChessPieceType.PAWN
+                        ? pawnTargets(side, from, occupied, occupied & ~own)
+                        : AttackTables.attacks(types[i], side, from,
+                            occupied) & ~own;
+                    while (targets != Bitboards.EMPTY) {
+                        int to = Bitboards.lowestSquare(targets);
+                        targets &= targets - 1;
+                        int captured = pieceAt(to);
+                        long after = (occupied | Bitboards.bit(to))
+                            ^ Bitboards.bit(from);
+                        squares[i] = to;
+                        boolean legal = !attacked(squares[king(s)], 1 - s,
+                                after, captured);
+                        squares[i] = from;
+                        if (legal) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+
+            // adds the value of a move's result, for the side moving into
+            // it
+            void count(int value) {
+                if (value == Tablebases.NOT_FOUND) {
+                    throw new IllegalStateException("a table " + material
+                            + " needs is missing");
+                }
+                if (value > 0) {
+                    longestWin = Math.max(longestWin,
+                            Tablebase.distance(value));
+                } else {
+                    allWins = false;
+                    if (value < 0) {
+                        shortestLoss = Math.min(shortestLoss,
+                                Tablebase.distance(value));
+                    }
+                }
+            }
+
+            // the value, in a smaller table, of the position reached by a
+            // capture and/or promotion, for the side then to move
+            int exit(int s, int captured, int promoted,
+                    ChessPiece.ChessPieceType promotion) {
+                int key = 0;
+                int n = 0;
+                for (int i = 0; i < pieces; i++) {
+                    if (i == captured) {
+                        continue;
+                    }
+                    int kind = Tablebases.pieceIndex(sides[i],
+                            i == promoted ? promotion : types[i]);
+                    key += 1 << 2 * kind;
+                    // insertion sort into lookup's order
+                    int j = n++;
+                    for (; j > 0 && exitOrder[j - 1] > kind; j--) {
+                        exitOrder[j] = exitOrder[j - 1];
+                        exitSquares[j] = exitSquares[j - 1];
+                    }
+                    exitOrder[j] = kind;
+                    exitSquares[j] = squares[i];
+                }
+                return known.lookup(key, exitSquares, SIDES[1 - s]);
+            }
+
+            void decode(int index) {
+                for (int i = 0; i < pieces; i++) {
+                    squares[i] = index >>> 6 * i & 63;
+                }
+            }
+
+            int index() {
+                int index = 0;
+                for (int i = 0; i < pieces; i++) {
+                    index |= squares[i] << 6 * i;
+                }
+                return index;
+            }
+
+            long occupancy() {
+                long occupied = Bitboards.EMPTY;
+                for (int i = 0; i < pieces; i++) {
+                    occupied |= Bitboards.bit(squares[i]);
+                }
+                return occupied;
+            }
+
+            long occupancy(int s) {
+                long occupied = Bitboards.EMPTY;
+                for (int i = 0; i < pieces; i++) {
+                    if (sides[i] == SIDES[s]) {
+                        occupied |= Bitboards.bit(squares[i]);
+                    }
+                }
+                return occupied;
+            }
+
+            // index of the piece on square, or -1
+            int pieceAt(int square) {
+                for (int i = 0; i < pieces; i++) {
+                    if (squares[i] == square) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            // no two pieces on a square, no pawns on the end rows, and the
+            // side not to move not in check
+            boolean isLegal(int s) {
+                long occupied = occupancy();
+                if (Long.bitCount(occupied) != pieces) {
+                    return false;
+                }
+                for (int i = 0; i < pieces; i++) {
+                    int row = Bitboards.row(squares[i]);
+                    if (types[i] == ChessPiece.ChessPieceType.PAWN
+                            && (row == 0 || row == 7)) {
+                        return false;
+                    }
+                }
+                return !attacked(squares[king(1 - s)], s, occupied, -1);
+            }
+
+            boolean inCheck(int s) {
+                return attacked(squares[king(s)], 1 - s, occupancy(), -1);
+            }
+
+            // whether a piece of side by, other than the one numbered skip,
+            // attacks square
+            boolean attacked(int square, int by, long occupied, int skip) {
+                long target = Bitboards.bit(square);
+                for (int i = 0; i < pieces; i++) {
+                    if (i != skip && sides[i] == SIDES[by]
+                            && (AttackTables.attacks(types[i], sides[i],
+                                squares[i], occupied) & target)
+                                != Bitboards.EMPTY) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+
+    // the better of two values for the side to move: the sooner win, a
+    // draw, or the later loss
+    private static int better(int a, int b) {
+        if (a > 0 && b > 0 || a < 0 && b < 0) {
+            return Tablebase.distance(a) < Tablebase.distance(b) == a > 0
+                ? a : b;
+        }
+        return Math.max(a, b);
+    }
+
+    // index of a side's king in a table's piece order
+    private static int king(int side) {
+        return side;
+    }
+
+    private static long pawnTargets(Side side, int from, long occupied,
+            long enemy) {
+        int forward = side == Side.WHITE ? -8 : 8;
+        long targets = AttackTables.pawnAttacks(side, from) & enemy;
+        int one = from + forward;
+        if ((occupied & Bitboards.bit(one)) == Bitboards.EMPTY) {
+            targets |= Bitboards.bit(one);
+            if (Bitboards.row(from) == side.getFrontRow()
+                    && (occupied & Bitboards.bit(one + forward))
+                        == Bitboards.EMPTY) {
+                targets |= Bitboards.bit(one + forward);
+            }
+        }
+        return targets;
+    }
+
+    // squares a pawn now on to can have come from without capturing
+    private static long pawnOrigins(Side side, int to, long occupied) {
+        int back = side == Side.WHITE ? 8 : -8;
+        int row = Bitboards.row(to);
+        long origins = Bitboards.EMPTY;
+        int one = to + back;
+        if (Bitboards.row(one) == side.getBackRow()
+                || (occupied & Bitboards.bit(one)) != Bitboards.EMPTY) {
+            return origins;
+        }
+        origins |= Bitboards.bit(one);
+        if (row == side.getFrontRow() - 2 * Integer.signum(back)
+                && (occupied & Bitboards.bit(one + back)) == Bitboards.EMPTY) {
+            origins |= Bitboards.bit(one + back);
+        }
+        return origins;
+    }
+
+    // what a pass does to a range of indexes
+    private interface Range {
+        void run(int from, int to);
+    }
+
+    private static class PassTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Range range;
+        private final int from;
+        private final int to;
+
+        PassTask(Range range, int from, int to) {
+            this.range = range;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                range.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PassTask(range, from, middle),
+                    new PassTask(range, middle, to));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package tablebase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import model.Side;
+
+/**
+ * Command line tablebase generator, no display needed.
+ *
+ * Usage: TablebaseMain directory [--threads n] (pieces | material...)
+ *
+ * Generates the tables for every material with up to pieces pieces, kings
+ * included, or for the named materials like KQvK KRvK KBNvK, along with the
+ * smaller tables they need, and writes each to directory as NAME.tb. Tables
+ * already in the directory are reused rather than generated again. Neither
+ * may go over Material.MAX_PIECES pieces.
+ * --threads n generates on n threads, all available cores by default.
+ *
+ * @author Joe
+ */
+public class TablebaseMain {
+
+    private static final String USAGE =
+        "usage: TablebaseMain directory [--threads n] (pieces | material...)";
+
+    public static void main(String[] args) throws IOException {
+        Path directory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Material> materials = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (directory == null) {
+                    directory = Paths.get(args[i]);
+                } else if (args[i].matches("[0-9]+")) {
+                    materials.addAll(Material.upTo(
+                            Integer.parseInt(args[i])));
+                } else {
+                    materials.add(Material.parse(args[i]));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            directory = null;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            directory = null;
+        }
+        if (directory == null || materials.isEmpty() || threads < 1) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        Files.createDirectories(directory);
+        Tablebases tablebases = Tablebases.load(directory);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        TablebaseGenerator generator =
+            new TablebaseGenerator(tablebases, pool);
+        for (Material material : materials) {
+            long start = System.nanoTime();
+            generator.generate(material);
+            long millis = (System.nanoTime() - start) / 1000000;
+            System.out.println(material.canonical() + ": " + millis + " ms");
+        }
+        pool.shutdown();
+
+        for (Tablebase table : tablebases.getTables()) {
+            Path file = directory.resolve(table.getMaterial().getName()
+                    + Tablebases.EXTENSION);
+            if (!Files.exists(file)) {
+                table.write(file);
+                report(table);
+            }
+        }
+    }
+
+    // prints how many positions are won, drawn and lost and the longest mate
+    private static void report(Tablebase table) {
+        long wins = 0;
+        long losses = 0;
+        int longest = 0;
+        int size = table.getMaterial().size();
+        for (Side side : Side.values()) {
+            for (int i = 0; i < size; i++) {
+                int value = table.get(side, i);
+                if (value > 0) {
+                    wins++;
+                } else if (value < 0) {
+                    losses++;
+                }
+                if (value != Tablebase.DRAW) {
+                    longest = Math.max(longest, Tablebase.distance(value));
+                }
+            }
+        }
+        System.out.println("wrote " + table + ": " + wins + " wins, "
+                + losses + " losses, longest mate " + longest + " plies");
+    }
+}
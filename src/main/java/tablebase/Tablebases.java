@@ -0,0 +1,286 @@
+package tablebase;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+
+/**
+ * A set of Tablebase tables, looked up by the pieces on the board. Safe to
+ * probe from several search threads at once.
+ *
+ * @author Joe
+ */
+public class Tablebases {
+
+    /**
+     * What probe answers when no table covers the position.
+     */
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    public static final String EXTENSION = ".tb";
+
+    /**
+     * The most pieces a board can hold, enough squares for probe.
+     */
+    public static final int MAX_PIECES = 32;
+
+    // values() copies its array on every call, too often for probe
+    private static final Side[] SIDES = Side.values();
+    private static final ChessPiece.ChessPieceType[] TYPES =
+        ChessPiece.ChessPieceType.values();
+
+    private final Map<String, Tablebase> tables = new ConcurrentHashMap<>();
+    // every table's mappings, for its material and its colour-swapped twin,
+    // open addressed by material key (see lookup). add builds a new array
+    // and swaps it in, so probes read it without locking or allocating
+    private volatile Mapping[] mappings = new Mapping[1];
+    private volatile int maxPieces;
+
+    // how a position's pieces, ordered by side then type, line up with the
+    // pieces of the table that covers it
+    private static class Mapping {
+        final int key;
+        final Tablebase table;
+        final boolean flip;
+        // input piece for each of the table's pieces
+        final int[] source;
+
+        Mapping(int key, Tablebase table, boolean flip, int[] source) {
+            this.key = key;
+            this.table = table;
+            this.flip = flip;
+            this.source = source;
+        }
+    }
+
+    /**
+     * Maps every table file in a directory.
+     *
+     * @param directory the directory
+     * @return the tables, empty if there are none
+     * @throws IOException if a file cannot be read or is not a table
+     */
+    public static Tablebases load(Path directory) throws IOException {
+        Tablebases tablebases = new Tablebases();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                "*" + EXTENSION)) {
+            for (Path file : files) {
+                tablebases.add(Tablebase.map(file));
+            }
+        }
+        return tablebases;
+    }
+
+    /**
+     * @param table a table, replacing any for the same material
+     */
+    public synchronized void add(Tablebase table) {
+        tables.put(table.getMaterial().getName(), table);
+        // at most half full, two mappings a table
+        Mapping[] slots = new Mapping[Integer.highestOneBit(
+                4 * tables.size()) << 1];
+        for (Tablebase t : tables.values()) {
+            int key = materialKey(t.getMaterial());
+            insert(slots, createMapping(key));
+            int flippedKey = materialKey(t.getMaterial().flipped());
+            if (flippedKey != key) {
+                insert(slots, createMapping(flippedKey));
+            }
+        }
+        mappings = slots;
+        maxPieces = Math.max(maxPieces, table.getMaterial().getPieceCount());
+    }
+
+    /**
+     * @param material a canonical material
+     * @return its table, or null
+     */
+    public Tablebase get(Material material) {
+        return tables.get(material.getName());
+    }
+
+    public Collection<Tablebase> getTables() {
+        return tables.values();
+    }
+
+    /**
+     * @return the most pieces, kings included, any table has
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * @param board a position
+     * @return its Tablebase value for the side to move, or NOT_FOUND if it
+     * has too many pieces, castling rights or an en passant capture, or
+     * there is no table for its material
+     */
+    public int probe(ChessBoard board) {
+        return probe(board, new int[MAX_PIECES]);
+    }
+
+    /**
+     * Probes without allocating, for searches that probe often.
+     *
+     * @param board a position
+     * @param squares scratch space, MAX_PIECES long, that one thread may
+     * reuse for every probe
+     * @return as probe(board)
+     */
+    public int probe(ChessBoard board, int[] squares) {
+        long occupied = board.getOccupied();
+        int count = Long.bitCount(occupied);
+        if (count > maxPieces || canTakeEnPassant(board)
+                || board.hasCastlingRight(Side.WHITE, true)
+                || board.hasCastlingRight(Side.WHITE, false)
+                || board.hasCastlingRight(Side.BLACK, true)
+                || board.hasCastlingRight(Side.BLACK, false)) {
+            return NOT_FOUND;
+        }
+
+        int key = 0;
+        int n = 0;
+        for (Side side : SIDES) {
+            for (ChessPiece.ChessPieceType type : TYPES) {
+                long pieces = board.getBitboard(side, type);
+                key += Long.bitCount(pieces) << 2 * pieceIndex(side, type);
+                while (pieces != Bitboards.EMPTY) {
+                    squares[n++] = Bitboards.lowestSquare(pieces);
+                    pieces &= pieces - 1;
+                }
+            }
+        }
+        return lookup(key, squares, board.getSideToMove());
+    }
+
+    // whether a pawn of the side to move stands next to a pawn that can be
+    // taken en passant
+    private static boolean canTakeEnPassant(ChessBoard board) {
+        int target = board.getEnPassantPawnSquare();
+        if (target < 0) {
+            return false;
+        }
+        long besides = Bitboards.EMPTY;
+        int col = Bitboards.col(target);
+        if (col > 0) {
+            besides |= Bitboards.bit(target - 1);
+        }
+        if (col < 7) {
+            besides |= Bitboards.bit(target + 1);
+        }
+        return (besides & board.getBitboard(board.getSideToMove(),
+                ChessPiece.ChessPieceType.PAWN)) != Bitboards.EMPTY;
+    }
+
+    /**
+     * Looks a position given as a list of pieces up.
+     *
+     * @param key the material key, the sum of count << 2 * pieceIndex over
+     * the kinds of piece on the board, so at most three of a kind
+     * @param squares where the pieces are, ordered by pieceIndex
+     * @param toMove the side to move
+     * @return the value for the side to move, or NOT_FOUND
+     */
+    int lookup(int key, int[] squares, Side toMove) {
+        Mapping[] slots = mappings;
+        int mask = slots.length - 1;
+        Mapping mapping;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            mapping = slots[i];
+            if (mapping == null) {
+                return NOT_FOUND;
+            }
+            if (mapping.key == key) {
+                break;
+            }
+        }
+
+        int index = 0;
+        for (int j = 0; j < mapping.source.length; j++) {
+            int sq = squares[mapping.source[j]];
+            index |= (mapping.flip ? sq ^ 56 : sq) << 6 * j;
+        }
+        if (mapping.flip) {
+            toMove = toMove == Side.WHITE ? Side.BLACK : Side.WHITE;
+        }
+        return mapping.table.get(toMove, index);
+    }
+
+    /**
+     * @return where a kind of piece comes in the order lookup takes them
+     */
+    static int pieceIndex(Side side, ChessPiece.ChessPieceType type) {
+        return side.ordinal() * TYPES.length + type.ordinal();
+    }
+
+    // the material key of a list of pieces, as lookup takes it
+    private static int materialKey(Material material) {
+        int key = 0;
+        for (int i = 0; i < material.getPieceCount(); i++) {
+            key += 1 << 2 * pieceIndex(material.getSide(i),
+                    material.getType(i));
+        }
+        return key;
+    }
+
+    private static int slot(int key, int mask) {
+        // material keys differ mostly in a few high bits, so mix them down
+        return (key * 0x9e3779b9 >>> 16) & mask;
+    }
+
+    private static void insert(Mapping[] slots, Mapping mapping) {
+        int mask = slots.length - 1;
+        int i = slot(mapping.key, mask);
+        while (slots[i] != null) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = mapping;
+    }
+
+    // the mapping for a material key, which must have a table
+    private Mapping createMapping(int key) {
+        List<Side> sides = new ArrayList<>();
+        List<ChessPiece.ChessPieceType> types = new ArrayList<>();
+        for (Side side : SIDES) {
+            for (ChessPiece.ChessPieceType type : TYPES) {
+                int count = key >>> 2 * pieceIndex(side, type) & 3;
+                for (int i = 0; i < count; i++) {
+                    sides.add(side);
+                    types.add(type);
+                }
+            }
+        }
+        Material material = new Material(sides, types);
+        boolean flip = !material.isCanonical();
+        Tablebase table = tables.get(material.canonical().getName());
+
+        Material canonical = table.getMaterial();
+        int[] source = new int[sides.size()];
+        boolean[] used = new boolean[sides.size()];
+        for (int j = 0; j < source.length; j++) {
+            for (int i = 0; i < source.length; i++) {
+                Side side = flip
+                    ? (sides.get(i) == Side.WHITE ? Side.BLACK : Side.WHITE)
+                    : sides.get(i);
+                if (!used[i] && side == canonical.getSide(j)
+                        && types.get(i) == canonical.getType(j)) {
+                    used[i] = true;
+                    source[j] = i;
+                    break;
+                }
+            }
+        }
+        return new Mapping(key, table, flip, source);
+    }
+}
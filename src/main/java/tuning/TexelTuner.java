@@ -0,0 +1,315 @@
+package tuning;
+
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessPiece;
+import model.chess.PieceSquareTables;
+
+/**
+ * Tunes the material and piece-square values of PieceSquareTables against a
+ * TrainingSet by Texel's method: the evaluation, squashed by a sigmoid into
+ * an expected result, should match the actual results of the games the
+ * positions came from as closely as possible, in mean squared error.
+ *
+ * The evaluation is linear in the values, so rather than nudging each value
+ * up and down and measuring again (Texel's original local search, one pass
+ * over the set per value) every pass works out the error's gradient for all
+ * of them at once and takes an Adam step. Passes are split into ranges of
+ * positions summed in parallel on a ForkJoinPool.
+ *
+ * Middlegame and endgame values are tuned separately, material as well as
+ * squares, starting from the current tables. The pawn structure is held
+ * fixed at what TrainingSet worked out.
+ *
+ * @author Joe
+ */
+public class TexelTuner {
+
+    // where each kind of value starts in the weights, all by
+    // ChessPieceType ordinal, squares from white's side as in
+    // PieceSquareTables
+    static final int MIDDLEGAME_MATERIAL = 0;
+    static final int ENDGAME_MATERIAL = 6;
+    static final int MIDDLEGAME_SQUARES = 12;
+    static final int ENDGAME_SQUARES = MIDDLEGAME_SQUARES + 6 * 64;
+    public static final int PARAMETERS = ENDGAME_SQUARES + 6 * 64;
+
+    // positions each task sums on its own
+    private static final int CHUNK = 1 << 14;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    private final TrainingSet set;
+    private final ForkJoinPool pool;
+    private final double[] weights = new double[PARAMETERS];
+    // Adam's running averages of the gradient and its square
+    private final double[] moment = new double[PARAMETERS];
+    private final double[] velocity = new double[PARAMETERS];
+    private int steps;
+    private double scale = 1;
+    private double rate = 1;
+
+    // the error and gradient of a range of positions
+    private static class Sum {
+        double error;
+        final double[] gradient;
+
+        Sum(boolean withGradient) {
+            gradient = withGradient ? new double[PARAMETERS] : null;
+        }
+
+        Sum add(Sum other) {
+            error += other.error;
+            if (gradient != null) {
+                for (int i = 0; i < PARAMETERS; i++) {
+                    gradient[i] += other.gradient[i];
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Starts from the current PieceSquareTables.
+     *
+     * @param set the positions to tune against
+     * @param pool where to run the passes over them
+     */
+    public TexelTuner(TrainingSet set, ForkJoinPool pool) {
+        this.set = set;
+        this.pool = pool;
+        for (ChessPiece.ChessPieceType type
+                : ChessPiece.ChessPieceType.values()) {
+            int t = type.ordinal();
+            int value = PieceSquareTables.pieceValue(type);
+            weights[MIDDLEGAME_MATERIAL + t] = value;
+            weights[ENDGAME_MATERIAL + t] = value;
+            int index = Bitboards.index(Side.WHITE, type);
+            for (int sq = 0; sq < 64; sq++) {
+                weights[MIDDLEGAME_SQUARES + 64 * t + sq] =
+                    PieceSquareTables.middlegame(index, sq) - value;
+                weights[ENDGAME_SQUARES + 64 * t + sq] =
+                    PieceSquareTables.endgame(index, sq) - value;
+            }
+        }
+    }
+
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * @return K, how steeply the sigmoid turns centipawns into results
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    public void setScale(double scale) {
+        this.scale = scale;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * @param rate how far, in centipawns, each step may move a value
+     */
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * @return the mean squared error of the current values
+     */
+    public double error() {
+        return pass(false).error / set.size();
+    }
+
+    /**
+     * Picks the K that gives the current values the least error, by golden
+     * section search, and keeps it for the steps that follow.
+     *
+     * @return the error with that K
+     */
+    public double fitScale() {
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = 0;
+        double high = 10;
+        while (high - low > 1e-4) {
+            double a = high - ratio * (high - low);
+            double b = low + ratio * (high - low);
+            scale = a;
+            double errorA = error();
+            scale = b;
+            double errorB = error();
+            if (errorA < errorB) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        scale = (low + high) / 2;
+        return error();
+    }
+
+    /**
+     * Takes one Adam step down the error's gradient.
+     *
+     * @return the mean squared error before the step
+     */
+    public double step() {
+        Sum sum = pass(true);
+        steps++;
+        double correction1 = 1 - Math.pow(BETA1, steps);
+        double correction2 = 1 - Math.pow(BETA2, steps);
+        for (int i = 0; i < PARAMETERS; i++) {
+            double g = sum.gradient[i] / set.size();
+            moment[i] = BETA1 * moment[i] + (1 - BETA1) * g;
+            velocity[i] = BETA2 * velocity[i] + (1 - BETA2) * g * g;
+            weights[i] -= rate * (moment[i] / correction1)
+                / (Math.sqrt(velocity[i] / correction2) + EPSILON);
+        }
+        return sum.error / set.size();
+    }
+
+    private Sum pass(boolean withGradient) {
+        return pool.invoke(new PassTask(this, withGradient, 0, set.size()));
+    }
+
+    // the error and, if wanted, gradient over positions from to to
+    private Sum sum(boolean withGradient, long from, long to) {
+        Sum sum = new Sum(withGradient);
+        TrainingSet.Sample sample = new TrainingSet.Sample();
+        double[] g = sum.gradient;
+        for (long i = from; i < to; i++) {
+            set.read(i, sample);
+            double middlegameWeight = sample.phase
+                / (double) PieceSquareTables.MAX_PHASE;
+            double endgameWeight = 1 - middlegameWeight;
+
+            double middlegame = sample.pawnMiddlegame;
+            double endgame = sample.pawnEndgame;
+            for (int j = 0; j < sample.pieceCount; j++) {
+                int piece = sample.pieces[j];
+                int t = (piece >>> 6) % Bitboards.PIECE_TYPES;
+                boolean white = piece >>> 6 < Bitboards.PIECE_TYPES;
+                // black pieces look their squares up flipped, negated
+                int sq = white ? piece & 63 : (piece & 63) ^ 56;
+                int sign = white ? 1 : -1;
+                middlegame += sign * (weights[MIDDLEGAME_MATERIAL + t]
+                    + weights[MIDDLEGAME_SQUARES + 64 * t + sq]);
+                endgame += sign * (weights[ENDGAME_MATERIAL + t]
+                    + weights[ENDGAME_SQUARES + 64 * t + sq]);
+            }
+            double score = middlegame * middlegameWeight
+                + endgame * endgameWeight;
+            double expected = sigmoid(score);
+            double difference = sample.result - expected;
+            sum.error += difference * difference;
+            if (g == null) {
+                continue;
+            }
+
+            // d error / d score
+            double d = -2 * difference * expected * (1 - expected)
+                * scale * Math.log(10) / 400;
+            for (int j = 0; j < sample.pieceCount; j++) {
+                int piece = sample.pieces[j];
+                int t = (piece >>> 6) % Bitboards.PIECE_TYPES;
+                boolean white = piece >>> 6 < Bitboards.PIECE_TYPES;
+                int sq = white ? piece & 63 : (piece & 63) ^ 56;
+                int sign = white ? 1 : -1;
+                double dm = sign * d * middlegameWeight;
+                double de = sign * d * endgameWeight;
+                g[MIDDLEGAME_MATERIAL + t] += dm;
+                g[MIDDLEGAME_SQUARES + 64 * t + sq] += dm;
+                g[ENDGAME_MATERIAL + t] += de;
+                g[ENDGAME_SQUARES + 64 * t + sq] += de;
+            }
+        }
+        return sum;
+    }
+
+    // expected result for white of a score in centipawns
+    private double sigmoid(double score) {
+        return 1 / (1 + Math.pow(10, -scale * score / 400));
+    }
+
+    /**
+     * Prints the values as Java declarations in the layout of
+     * PieceSquareTables, rounded to whole centipawns.
+     *
+     * @param out where to print them
+     */
+    public void print(PrintStream out) {
+        out.println("// " + set.size() + " positions, K = " + scale);
+        printValues(out, "MIDDLEGAME_VALUES", MIDDLEGAME_MATERIAL);
+        printValues(out, "ENDGAME_VALUES", ENDGAME_MATERIAL);
+        for (ChessPiece.ChessPieceType type
+                : ChessPiece.ChessPieceType.values()) {
+            int t = type.ordinal();
+            printTable(out, type + "_MIDDLEGAME", MIDDLEGAME_SQUARES + 64 * t);
+            printTable(out, type + "_ENDGAME", ENDGAME_SQUARES + 64 * t);
+        }
+    }
+
+    private void printValues(PrintStream out, String name, int start) {
+        StringBuilder line = new StringBuilder("private static final int[] ")
+            .append(name).append(" = {");
+        for (int t = 0; t < Bitboards.PIECE_TYPES; t++) {
+            line.append(t == 0 ? "" : ", ")
+                .append(Math.round(weights[start + t]));
+        }
+        out.println(line.append("};"));
+    }
+
+    private void printTable(PrintStream out, String name, int start) {
+        out.println();
+        out.println("private static final int[] " + name + " = {");
+        for (int row = 0; row < 8; row++) {
+            StringBuilder line = new StringBuilder("    ");
+            for (int col = 0; col < 8; col++) {
+                line.append(String.format("%4d",
+                        Math.round(weights[start + 8 * row + col])));
+                line.append(col < 7 ? "," : row < 7 ? "," : "};");
+            }
+            out.println(line);
+        }
+    }
+
+    private static class PassTask extends RecursiveTask<Sum> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient TexelTuner tuner;
+        private final boolean withGradient;
+        private final long from;
+        private final long to;
+
+        PassTask(TexelTuner tuner, boolean withGradient, long from,
+                long to) {
+            this.tuner = tuner;
+            this.withGradient = withGradient;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Sum compute() {
+            if (to - from <= CHUNK) {
+                return tuner.sum(withGradient, from, to);
+            }
+            long middle = (from + to) >>> 1;
+            PassTask right = new PassTask(tuner, withGradient, middle, to);
+            right.fork();
+            Sum left = new PassTask(tuner, withGradient, from, middle)
+                .compute();
+            return left.add(right.join());
+        }
+    }
+}
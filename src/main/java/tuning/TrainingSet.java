@@ -0,0 +1,245 @@
+package tuning;
+
+import gamecontrol.ai.PawnStructure;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import model.Side;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.EpdReader;
+import model.chess.PieceSquareTables;
+
+/**
+ * Positions labelled with the result of the game they came from, stored
+ * in a compact binary file that is mapped into memory a chunk at a time,
+ * so sets of any size can be worked through without holding them on the
+ * heap.
+ *
+ * convert makes one from a text file, streaming it one line at a time. Each
+ * line is a FEN or EPD record with the result anywhere after the position,
+ * in any of the usual forms: 1-0, 0-1 or 1/2-1/2, quoted or not as in
+ * c9 "1-0";, or as white's score in brackets like [1.0], [0.5], [0.0].
+ *
+ * The file is "JCTS", a version int and the number of records as a long,
+ * then a RECORD byte record per position: white's result (0 lost, 1 drawn,
+ * 2 won), the game phase, the middlegame and endgame PawnStructure scores
+ * from white's point of view as shorts, the number of pieces, a spare byte
+ * and then up to 32 pieces as shorts, Bitboards.index << 6 | square. The
+ * pawn structure is not tuned, so it is worked out once here.
+ *
+ * @author Joe
+ */
+public class TrainingSet {
+
+    static final int MAX_PIECES = 32;
+    static final int RECORD = 8 + 2 * MAX_PIECES;
+
+    private static final byte[] MAGIC =
+        "JCTS".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    // records per mapped chunk, 144 MB
+    private static final int CHUNK_RECORDS = 1 << 21;
+
+    private static final Pattern BRACKETED =
+        Pattern.compile("\\[(1|0|1\\.0|0\\.5|0\\.0)\\]");
+    private static final Pattern RESULT =
+        Pattern.compile("(^|[\\s\"])(1/2-1/2|1-0|0-1)([\\s\";]|$)");
+
+    private final List<MappedByteBuffer> chunks;
+    private final long size;
+
+    /**
+     * One record, decoded into arrays that are reused from record to record.
+     */
+    static class Sample {
+        // white's result: 0, 0.5 or 1
+        double result;
+        int phase;
+        int pawnMiddlegame;
+        int pawnEndgame;
+        int pieceCount;
+        // Bitboards.index << 6 | square
+        final int[] pieces = new int[MAX_PIECES];
+    }
+
+    private TrainingSet(List<MappedByteBuffer> chunks, long size) {
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /**
+     * Converts a text file of labelled positions, see the class comment.
+     *
+     * @param text the text file
+     * @param file where to write the set
+     * @return the number of positions written
+     * @throws IOException if either file cannot be used
+     * @throws IllegalArgumentException if a line has no valid position or
+     * result, its message holds the line number
+     */
+    public static long convert(Path text, Path file) throws IOException {
+        long count = 0;
+        ChessBoard board = new ChessBoard();
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        try (EpdReader reader = new EpdReader(
+                Files.newBufferedReader(text, StandardCharsets.UTF_8));
+                DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file),
+                        1 << 16))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            // the count is filled in at the end
+            out.writeLong(0);
+            while (reader.next(board)) {
+                int result = parseResult(reader.getLine());
+                if (result < 0) {
+                    throw new IllegalArgumentException("line "
+                            + reader.getLineNumber() + ": no result");
+                }
+                encode(board, result, record);
+                out.write(record.array());
+                count++;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+            header.putLong(count).flip();
+            channel.write(header, HEADER - Long.BYTES);
+        }
+        return count;
+    }
+
+    // white's result, 0 to 2 in half points, or -1 if there is none
+    static int parseResult(String line) {
+        Matcher m = BRACKETED.matcher(line);
+        if (m.find()) {
+            return (int) Math.round(2 * Double.parseDouble(m.group(1)));
+        }
+        m = RESULT.matcher(line);
+        if (m.find()) {
+            switch (m.group(2)) {
+            case "1-0":
+                return 2;
+            case "0-1":
+                return 0;
+            default:
+                return 1;
+            }
+        }
+        return -1;
+    }
+
+    private static void encode(ChessBoard board, int result,
+            ByteBuffer record) {
+        int pawns = PawnStructure.evaluate(board);
+        record.clear();
+        record.put((byte) result);
+        record.put((byte) Math.min(board.getPhase(),
+                PieceSquareTables.MAX_PHASE));
+        record.putShort((short) PawnStructure.middlegame(pawns));
+        record.putShort((short) PawnStructure.endgame(pawns));
+        int countAt = record.position();
+        record.put((byte) 0).put((byte) 0);
+
+        int count = 0;
+        for (Side side : Side.values()) {
+            for (ChessPiece.ChessPieceType type
+                    : ChessPiece.ChessPieceType.values()) {
+                int index = Bitboards.index(side, type);
+                long pieces = board.getBitboard(side, type);
+                while (pieces != Bitboards.EMPTY) {
+                    if (count == MAX_PIECES) {
+                        throw new IllegalArgumentException("more than "
+                                + MAX_PIECES + " pieces");
+                    }
+                    record.putShort((short) (index << 6
+                            | Bitboards.lowestSquare(pieces)));
+                    count++;
+                    pieces &= pieces - 1;
+                }
+            }
+        }
+        record.put(countAt, (byte) count);
+        while (record.hasRemaining()) {
+            record.put((byte) 0);
+        }
+    }
+
+    /**
+     * Maps a set written by convert.
+     *
+     * @param file the file
+     * @return the set
+     * @throws IOException if it cannot be read or is not a training set
+     */
+    public static TrainingSet map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            if (channel.size() < HEADER) {
+                throw new IOException(file + " is not a training set");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, HEADER);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            int version = header.getInt();
+            long size = header.getLong();
+            if (!java.util.Arrays.equals(magic, MAGIC) || version != VERSION
+                    || size < 0
+                    || channel.size() != HEADER + size * RECORD) {
+                throw new IOException(file + " is not a training set");
+            }
+
+            List<MappedByteBuffer> chunks = new ArrayList<>();
+            for (long first = 0; first < size; first += CHUNK_RECORDS) {
+                long records = Math.min(CHUNK_RECORDS, size - first);
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER + first * RECORD, records * RECORD));
+            }
+            return new TrainingSet(chunks, size);
+        }
+    }
+
+    /**
+     * @return the number of positions
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Decodes a record. Safe to call from several threads at once, each
+     * with its own sample.
+     *
+     * @param i which record, from 0 to size() - 1
+     * @param sample where to put it
+     */
+    void read(long i, Sample sample) {
+        ByteBuffer chunk = chunks.get((int) (i / CHUNK_RECORDS));
+        int at = (int) (i % CHUNK_RECORDS) * RECORD;
+        sample.result = chunk.get(at) / 2.0;
+        sample.phase = chunk.get(at + 1);
+        sample.pawnMiddlegame = chunk.getShort(at + 2);
+        sample.pawnEndgame = chunk.getShort(at + 4);
+        sample.pieceCount = chunk.get(at + 6);
+        for (int j = 0; j < sample.pieceCount; j++) {
+            sample.pieces[j] = chunk.getShort(at + 8 + 2 * j);
+        }
+    }
+}
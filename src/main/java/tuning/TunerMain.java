@@ -0,0 +1,104 @@
+package tuning;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Command line evaluation tuner, no display needed.
+ *
+ * Usage: TunerMain convert text set
+ *        TunerMain tune set [--threads n] [--iterations n] [--rate r]
+ *            [--scale k]
+ *
+ * convert turns a text file of positions and results into a TrainingSet
+ * file. tune runs TexelTuner over one for the given number of steps, 1000
+ * by default, reporting the error every 10, then prints the tuned tables.
+ * --threads n sums on n threads, all available cores by default. --rate
+ * sets the step size in centipawns, 1 by default. --scale fixes K instead
+ * of fitting it to the set first.
+ *
+ * @author Joe
+ */
+public class TunerMain {
+
+    private static final String USAGE =
+        "usage: TunerMain convert text set\n"
+        + "       TunerMain tune set [--threads n] [--iterations n]"
+        + " [--rate r] [--scale k]";
+
+    private static final int REPORT_INTERVAL = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("convert")) {
+            long start = System.nanoTime();
+            long count = TrainingSet.convert(Paths.get(args[1]),
+                    Paths.get(args[2]));
+            long millis = (System.nanoTime() - start) / 1000000;
+            System.out.println("wrote " + count + " positions in " + millis
+                    + " ms");
+            return;
+        }
+
+        Path file = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int iterations = 1000;
+        double rate = 1;
+        double scale = Double.NaN;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--iterations")) {
+                    iterations = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--rate")) {
+                    rate = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--scale")) {
+                    scale = Double.parseDouble(args[++i]);
+                } else if (file == null) {
+                    file = Paths.get(args[i]);
+                } else {
+                    file = null;
+                    break;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            file = null;
+        }
+        if (args.length == 0 || !args[0].equals("tune") || file == null
+                || threads < 1 || iterations < 0 || !(rate > 0)) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        TrainingSet set = TrainingSet.map(file);
+        if (set.size() == 0) {
+            System.err.println(file + " has no positions");
+            System.exit(1);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        TexelTuner tuner = new TexelTuner(set, pool);
+        tuner.setRate(rate);
+        long start = System.nanoTime();
+        if (Double.isNaN(scale)) {
+            double error = tuner.fitScale();
+            System.out.println("K = " + tuner.getScale() + ", error "
+                    + error);
+        } else {
+            tuner.setScale(scale);
+        }
+
+        for (int i = 0; i < iterations; i++) {
+            double error = tuner.step();
+            if (i % REPORT_INTERVAL == 0) {
+                long seconds = (System.nanoTime() - start) / 1000000000L;
+                System.out.println("step " + i + ": error " + error + ", "
+                        + seconds + " s");
+            }
+        }
+        System.out.println("final error " + tuner.error());
+        pool.shutdown();
+        tuner.print(System.out);
+    }
+}
@@ -0,0 +1,27 @@
+package gamecontrol.ai;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests that PolyglotKeys only takes Polyglot's own table.
+ *
+ * @author Joe
+ */
+public class PolyglotKeysTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesShortTables() {
+        new PolyglotKeys(new long[PolyglotKeys.KEY_COUNT - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesOtherTables() {
+        long[] random = new long[PolyglotKeys.KEY_COUNT];
+        Random generator = new Random(1331);
+        for (int i = 0; i < random.length; i++) {
+            random[i] = generator.nextLong();
+        }
+        new PolyglotKeys(random);
+    }
+}
@@ -0,0 +1,44 @@
+package tablebase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import model.chess.ChessBoard;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests TablebaseGenerator against positions with a known value. KPvKP
+ * needs every table a pawn can promote into, so the tables are generated
+ * once for the whole class, which takes a while and about a gigabyte.
+ *
+ * @author Joe
+ */
+public class TablebaseGeneratorTest {
+
+    private static Tablebases tablebases;
+
+    @BeforeClass
+    public static void generate() {
+        tablebases = new Tablebases();
+        ForkJoinPool pool = new ForkJoinPool();
+        new TablebaseGenerator(tablebases, pool)
+            .generate(Material.parse("KPvKP"));
+        pool.shutdown();
+    }
+
+    private static int probe(String fen) {
+        return tablebases.probe(new ChessBoard(fen));
+    }
+
+    @Test
+    public void doublePushAllowsEnPassant() {
+        // after a2-a4 the stored position, with no en passant, is a draw,
+        // but bxa3 wins for black, as every other white move does
+        assertEquals(Tablebase.DRAW,
+                probe("K7/8/8/8/Pp6/8/8/k7 b - - 0 1"));
+        int value = probe("K7/8/8/8/1p6/8/P7/k7 w - - 0 1");
+        assertTrue("white should lose, not " + value, value < 0);
+    }
+}